@@ -0,0 +1,50 @@
+package com.aiplatform.ai;
+
+import com.aiplatform.entity.Chat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+/**
+ * AI引擎SPI
+ *
+ * 每个引擎由 {@link AiEngineRegistry} 分配独立的有界线程池，实现类应把耗时工作提交到传入的 executor 上，
+ * 不要在调用线程中阻塞。
+ */
+public interface AiEngine {
+
+    /**
+     * 引擎名称，用于路由配置（ai.routing.*）和引擎参数（ai.engines.&lt;name&gt;.*）
+     */
+    String getName();
+
+    /**
+     * 是否支持指定的AI类型
+     */
+    boolean supports(Chat.AiType aiType);
+
+    /**
+     * 影响生成结果的模型名称与参数，作为响应缓存键的一部分；配置变化后旧的缓存不再命中
+     */
+    default String getModelConfig() {
+        return getName();
+    }
+
+    /**
+     * 相同提示词是否总是得到可复用的回复；依赖当前时间等外部状态、或回复与提示词中空白有关的请求应返回 false，不进入响应缓存
+     */
+    default boolean isCacheable(AiRequest request) {
+        return true;
+    }
+
+    /**
+     * 异步生成完整回复
+     */
+    CompletableFuture<String> generate(AiRequest request, Executor executor);
+
+    /**
+     * 流式生成回复，每个元素是一个增量片段
+     */
+    Flow.Publisher<String> stream(AiRequest request, Executor executor);
+}
@@ -0,0 +1,347 @@
+package com.aiplatform.ai;
+
+import com.aiplatform.entity.Chat;
+import com.aiplatform.exception.BusinessException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AI引擎注册表：按 Chat.AiType 路由到具体引擎
+ *
+ * 每个引擎拥有独立的有界线程池（并发数 + 等待队列），超出容量直接拒绝；
+ * 所有调用带超时，并上报队列深度、活跃数、结果计数和耗时等指标。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AiEngineRegistry {
+
+    private final List<AiEngine> engines;
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final AiResponseCache responseCache;
+
+    private final Map<String, EngineSlot> slots = new LinkedHashMap<>();
+    private final Map<Chat.AiType, EngineSlot> routes = new EnumMap<>(Chat.AiType.class);
+    private ScheduledExecutorService timeoutScheduler;
+
+    @PostConstruct
+    public void init() {
+        timeoutScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ai-engine-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        for (AiEngine engine : engines) {
+            EngineSlot slot = new EngineSlot(engine,
+                    engineProperty(engine.getName(), "concurrency", 8),
+                    engineProperty(engine.getName(), "queue-capacity", 100),
+                    engineProperty(engine.getName(), "timeout-ms", 30000));
+            slots.put(engine.getName(), slot);
+            log.info("注册AI引擎: name={}, concurrency={}, queueCapacity={}, timeoutMs={}",
+                    engine.getName(), slot.concurrency, slot.queueCapacity, slot.timeoutMs);
+        }
+
+        for (Chat.AiType aiType : Chat.AiType.values()) {
+            String configured = environment.getProperty("ai.routing." + aiType.name());
+            EngineSlot slot = configured != null ? slots.get(configured) : null;
+            if (configured != null && slot == null) {
+                log.warn("AI类型 {} 配置的引擎不存在: {}", aiType, configured);
+            }
+            if (slot == null) {
+                slot = slots.values().stream()
+                        .filter(s -> s.engine.supports(aiType))
+                        .findFirst()
+                        .orElse(null);
+            }
+            if (slot != null) {
+                routes.put(aiType, slot);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        slots.values().forEach(slot -> slot.executor.shutdown());
+        timeoutScheduler.shutdownNow();
+    }
+
+    /**
+     * 异步生成完整回复
+     */
+    public CompletableFuture<String> generate(AiRequest request) {
+        EngineSlot slot = route(request.getAiType());
+        Timer.Sample sample = Timer.start(meterRegistry);
+
+        RequestTasks tasks = new RequestTasks(slot.executor);
+        CompletableFuture<String> future;
+        try {
+            future = slot.engine.generate(request, tasks);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return future.orTimeout(slot.timeoutMs, TimeUnit.MILLISECONDS)
+                .whenComplete((reply, error) -> {
+                    if (error != null) {
+                        // 超时只让调用方的 future 失败，还需中断引擎任务，释放线程池中的位置
+                        tasks.cancelAll();
+                    }
+                    slot.record(sample, error);
+                });
+    }
+
+    /**
+     * 异步生成完整回复；useCache 为 true 时复用相同提示词的缓存回复，并与进行中的相同请求合并
+     */
+    public CompletableFuture<String> generate(AiRequest request, boolean useCache) {
+        if (!useCache) {
+            return generate(request);
+        }
+        EngineSlot slot = route(request.getAiType());
+        return responseCache.get(slot.engine, request, () -> generate(request));
+    }
+
+    /**
+     * 流式生成回复，超时后取消上游并向订阅者发出 TimeoutException
+     */
+    public Flow.Publisher<String> stream(AiRequest request) {
+        EngineSlot slot = route(request.getAiType());
+        return subscriber -> {
+            RequestTasks tasks = new RequestTasks(slot.executor);
+            slot.engine.stream(request, tasks)
+                    .subscribe(new TimeoutSubscriber(subscriber, slot, tasks, Timer.start(meterRegistry)));
+        };
+    }
+
+    /**
+     * 把引擎异常转换为面向用户的提示
+     */
+    public static String describeFailure(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof BusinessException) {
+            return cause.getMessage();
+        }
+        if (cause instanceof TimeoutException) {
+            return "AI生成超时，请稍后重试";
+        }
+        if (cause instanceof RejectedExecutionException) {
+            return "AI服务繁忙，请稍后重试";
+        }
+        return "生成回复失败";
+    }
+
+    private EngineSlot route(Chat.AiType aiType) {
+        EngineSlot slot = routes.get(aiType != null ? aiType : Chat.AiType.text_to_text);
+        if (slot == null) {
+            throw new BusinessException("暂不支持该AI类型: " + aiType);
+        }
+        return slot;
+    }
+
+    private int engineProperty(String engineName, String key, int defaultValue) {
+        Integer value = environment.getProperty("ai.engines." + engineName + "." + key, Integer.class);
+        if (value == null) {
+            value = environment.getProperty("ai.engine-defaults." + key, Integer.class, defaultValue);
+        }
+        return value;
+    }
+
+    /**
+     * 单个引擎的线程池与指标
+     */
+    private class EngineSlot {
+
+        private final AiEngine engine;
+        private final int concurrency;
+        private final int queueCapacity;
+        private final long timeoutMs;
+        private final ThreadPoolExecutor executor;
+        private final Counter succeeded;
+        private final Counter failed;
+        private final Counter timedOut;
+        private final Counter rejected;
+        private final Timer latency;
+
+        EngineSlot(AiEngine engine, int concurrency, int queueCapacity, long timeoutMs) {
+            this.engine = engine;
+            this.concurrency = concurrency;
+            this.queueCapacity = queueCapacity;
+            this.timeoutMs = timeoutMs;
+
+            String name = engine.getName();
+            this.succeeded = requestCounter(name, "success");
+            this.failed = requestCounter(name, "failure");
+            this.timedOut = requestCounter(name, "timeout");
+            this.rejected = requestCounter(name, "rejected");
+            this.latency = Timer.builder("ai.engine.latency").tag("engine", name).register(meterRegistry);
+
+            AtomicInteger threadIndex = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "ai-" + name + "-" + threadIndex.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    (runnable, pool) -> {
+                        rejected.increment();
+                        throw new RejectedExecutionException("AI引擎 " + name + " 队列已满");
+                    });
+            this.executor.allowCoreThreadTimeOut(true);
+
+            Gauge.builder("ai.engine.queue.depth", executor, pool -> pool.getQueue().size())
+                    .tag("engine", name).register(meterRegistry);
+            Gauge.builder("ai.engine.active", executor, ThreadPoolExecutor::getActiveCount)
+                    .tag("engine", name).register(meterRegistry);
+        }
+
+        private Counter requestCounter(String engineName, String outcome) {
+            return Counter.builder("ai.engine.requests")
+                    .tag("engine", engineName)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry);
+        }
+
+        void record(Timer.Sample sample, Throwable error) {
+            sample.stop(latency);
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause == null) {
+                succeeded.increment();
+            } else if (cause instanceof TimeoutException) {
+                timedOut.increment();
+            } else if (!(cause instanceof RejectedExecutionException)) {
+                // 拒绝已在线程池的拒绝策略中计数
+                failed.increment();
+            }
+        }
+    }
+
+    /**
+     * 为流式生成加上整体超时，并保证终止信号只发送一次
+     */
+    private class TimeoutSubscriber implements Flow.Subscriber<String> {
+
+        private final Flow.Subscriber<? super String> downstream;
+        private final EngineSlot slot;
+        private final RequestTasks tasks;
+        private final Timer.Sample sample;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile Flow.Subscription upstream;
+        private volatile ScheduledFuture<?> timeoutTask;
+
+        TimeoutSubscriber(Flow.Subscriber<? super String> downstream, EngineSlot slot, RequestTasks tasks,
+                          Timer.Sample sample) {
+            this.downstream = downstream;
+            this.slot = slot;
+            this.tasks = tasks;
+            this.sample = sample;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.upstream = subscription;
+            this.timeoutTask = timeoutScheduler.schedule(
+                    () -> terminate(new TimeoutException("AI引擎 " + slot.engine.getName() + " 生成超时")),
+                    slot.timeoutMs, TimeUnit.MILLISECONDS);
+            downstream.onSubscribe(subscription);
+        }
+
+        @Override
+        public synchronized void onNext(String item) {
+            if (!done.get()) {
+                downstream.onNext(item);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            terminate(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            terminate(null);
+        }
+
+        private synchronized void terminate(Throwable error) {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            ScheduledFuture<?> task = timeoutTask;
+            if (task != null) {
+                task.cancel(false);
+            }
+            slot.record(sample, error);
+            if (error instanceof TimeoutException) {
+                if (upstream != null) {
+                    upstream.cancel();
+                }
+                tasks.cancelAll();
+            }
+            if (error == null) {
+                downstream.onComplete();
+            } else {
+                downstream.onError(error);
+            }
+        }
+    }
+
+    /**
+     * 一次请求提交到引擎线程池的任务；超时后取消全部任务（运行中的中断，排队中的移出队列）
+     */
+    private static class RequestTasks implements Executor {
+
+        private final ThreadPoolExecutor pool;
+        private final ConcurrentLinkedQueue<Future<?>> submitted = new ConcurrentLinkedQueue<>();
+
+        RequestTasks(ThreadPoolExecutor pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            submitted.add(pool.submit(command));
+        }
+
+        void cancelAll() {
+            Future<?> task;
+            while ((task = submitted.poll()) != null) {
+                task.cancel(true);
+                if (task instanceof Runnable queued) {
+                    pool.remove(queued);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.aiplatform.ai;
+
+import com.aiplatform.entity.Chat;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * AI生成请求
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AiRequest {
+
+    private Long chatId;
+
+    private Chat.AiType aiType;
+
+    private String prompt;
+}
@@ -0,0 +1,97 @@
+package com.aiplatform.ai;
+
+import com.aiplatform.entity.Chat;
+import com.aiplatform.util.TtlCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 相同提示词的回复缓存
+ *
+ * 键为引擎、模型配置、AI类型和规整后的提示词（去掉首尾空白、合并连续空白）。已完成的回复保存在有界的 TTL 缓存中；
+ * 同一个键正在生成时，并发请求共享同一次生成（single-flight），生成失败不缓存。
+ * 命中/未命中计入 cache.gets{cache=ai-responses}，共享进行中生成的请求计入 cache.coalesced。
+ */
+@Component
+public class AiResponseCache {
+
+    private final boolean enabled;
+    private final int maxPromptLength;
+    private final TtlCache<Key, String> responses;
+    private final Map<Key, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final Counter coalesced;
+
+    private record Key(String engine, String modelConfig, Chat.AiType aiType, String prompt) {
+    }
+
+    public AiResponseCache(MeterRegistry meterRegistry,
+                           @Value("${ai.response-cache.enabled:true}") boolean enabled,
+                           @Value("${ai.response-cache.max-entries:10000}") int maxEntries,
+                           @Value("${ai.response-cache.ttl-minutes:30}") long ttlMinutes,
+                           @Value("${ai.response-cache.max-prompt-length:500}") int maxPromptLength) {
+        this.enabled = enabled;
+        this.maxPromptLength = maxPromptLength;
+        this.responses = new TtlCache<>("ai-responses", maxEntries, Duration.ofMinutes(ttlMinutes), meterRegistry);
+        this.coalesced = Counter.builder("cache.coalesced").tag("cache", "ai-responses").register(meterRegistry);
+    }
+
+    /**
+     * 返回缓存的回复，或加入进行中的生成；都没有时调用 generator 生成
+     */
+    public CompletableFuture<String> get(AiEngine engine, AiRequest request, Supplier<CompletableFuture<String>> generator) {
+        String prompt = normalize(request.getPrompt());
+        if (!enabled || prompt.isEmpty() || prompt.length() > maxPromptLength || !engine.isCacheable(request)) {
+            return generator.get();
+        }
+
+        Key key = new Key(engine.getName(), engine.getModelConfig(), request.getAiType(), prompt);
+        String cached = responses.get(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<String> flight = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.increment();
+            return existing.copy();
+        }
+        // 查缓存与登记之间另一次生成可能刚好完成：先写缓存再移除登记，此时再查一次即可命中
+        cached = responses.peek(key);
+        if (cached != null) {
+            inFlight.remove(key, flight);
+            flight.complete(cached);
+            return CompletableFuture.completedFuture(cached);
+        }
+        try {
+            generator.get().whenComplete((reply, error) -> {
+                // 先写入缓存再移除进行中的记录，之后到达的请求总能命中其中之一
+                if (error == null && reply != null) {
+                    responses.put(key, reply);
+                }
+                inFlight.remove(key, flight);
+                if (error != null) {
+                    flight.completeExceptionally(error);
+                } else {
+                    flight.complete(reply);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(e);
+        }
+        return flight.copy();
+    }
+
+    private static String normalize(String prompt) {
+        return prompt == null ? "" : prompt.trim().replaceAll("\\s+", " ");
+    }
+}
@@ -0,0 +1,30 @@
+package com.aiplatform.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 把完整文本切分为流式输出的片段
+ */
+public final class AiTokenizer {
+
+    // 英文单词/数字整体输出，其余字符（中文、标点）逐个输出
+    private static final Pattern TOKEN_PATTERN = Pattern.compile("\\s*[A-Za-z0-9_]+|\\s*\\S|\\s+");
+
+    private AiTokenizer() {
+    }
+
+    public static List<String> split(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        Matcher matcher = TOKEN_PATTERN.matcher(text);
+        while (matcher.find()) {
+            tokens.add(matcher.group());
+        }
+        return tokens;
+    }
+}
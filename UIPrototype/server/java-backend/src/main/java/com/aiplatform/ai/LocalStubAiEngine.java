@@ -0,0 +1,121 @@
+package com.aiplatform.ai;
+
+import com.aiplatform.entity.Chat;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * 本地确定性桩引擎：不依赖外部模型，按关键字返回固定回复
+ *
+ * 通过 ai.engines.local-stub.latency-ms（首字延迟）和 token-delay-ms（逐字延迟）模拟真实模型耗时，便于压测。
+ */
+@Component
+@Slf4j
+public class LocalStubAiEngine implements AiEngine {
+
+    public static final String NAME = "local-stub";
+
+    @Value("${ai.engines.local-stub.latency-ms:0}")
+    private long latencyMs;
+
+    @Value("${ai.engines.local-stub.token-delay-ms:0}")
+    private long tokenDelayMs;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean supports(Chat.AiType aiType) {
+        return true;
+    }
+
+    @Override
+    public boolean isCacheable(AiRequest request) {
+        // 询问时间的回复包含当前时间
+        return request.getPrompt() == null || !request.getPrompt().toLowerCase().contains("时间");
+    }
+
+    @Override
+    public CompletableFuture<String> generate(AiRequest request, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            String reply = reply(request.getPrompt());
+            sleep(latencyMs + tokenDelayMs * AiTokenizer.split(reply).size());
+            return reply;
+        }, executor);
+    }
+
+    @Override
+    public Flow.Publisher<String> stream(AiRequest request, Executor executor) {
+        return subscriber -> {
+            SubmissionPublisher<String> publisher = new SubmissionPublisher<>(Runnable::run, Flow.defaultBufferSize());
+            publisher.subscribe(subscriber);
+            try {
+                executor.execute(() -> {
+                    try {
+                        List<String> tokens = AiTokenizer.split(reply(request.getPrompt()));
+                        sleep(latencyMs);
+                        for (String token : tokens) {
+                            if (!publisher.hasSubscribers()) {
+                                break;
+                            }
+                            sleep(tokenDelayMs);
+                            publisher.submit(token);
+                        }
+                        publisher.close();
+                    } catch (Exception e) {
+                        publisher.closeExceptionally(e);
+                    }
+                });
+            } catch (RuntimeException e) {
+                publisher.closeExceptionally(e);
+            }
+        };
+    }
+
+    /**
+     * 按关键字生成回复（原 ChatService 临时实现）
+     */
+    String reply(String userMessage) {
+        if (userMessage == null || userMessage.trim().isEmpty()) {
+            return "请输入您的问题。";
+        }
+
+        String message = userMessage.toLowerCase().trim();
+
+        if (message.contains("你好") || message.contains("hello")) {
+            return "你好！我是AI助手，很高兴为您服务。有什么我可以帮助您的吗？";
+        } else if (message.contains("天气")) {
+            return "很抱歉，我目前无法获取实时天气信息。您可以查看天气预报应用或网站获取准确的天气信息。";
+        } else if (message.contains("时间")) {
+            return "当前时间是：" + LocalDateTime.now().toString();
+        } else if (message.contains("帮助")) {
+            return "我是您的AI助手，可以回答问题、提供建议、协助处理各种任务。请告诉我您需要什么帮助？";
+        } else if (message.contains("功能")) {
+            return "我目前支持文本对话功能。未来将支持图像生成、图像识别、视频生成等更多AI功能。";
+        } else {
+            return "我理解您的问题：\"" + userMessage + "\"。这是一个很好的问题！作为AI助手，我会尽力为您提供帮助和回答。请问您还有其他问题吗？";
+        }
+    }
+
+    private void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("生成被中断", e);
+        }
+    }
+}
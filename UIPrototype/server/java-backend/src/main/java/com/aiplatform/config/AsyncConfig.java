@@ -0,0 +1,105 @@
+package com.aiplatform.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.interceptor.AsyncUncaughtExceptionHandler;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.AsyncConfigurer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+
+/**
+ * 按业务划分的有界异步线程池
+ *
+ * cleanup、export、push 各自独立，互不抢占；线程数与队列容量通过 app.async.&lt;name&gt;.* 配置。
+ * 队列满时计数 executor.rejected 并抛出 TaskRejectedException，由提交方决定丢弃还是回退。
+ * 活跃线程数、队列长度等由 Spring Boot 对 Executor Bean 自动注册的 executor.* 指标提供。
+ * AI 生成使用 AiEngineRegistry 中按引擎划分的线程池。
+ */
+@Configuration
+@Slf4j
+public class AsyncConfig implements AsyncConfigurer {
+
+    public static final String CLEANUP_EXECUTOR = "cleanupExecutor";
+    public static final String EXPORT_EXECUTOR = "exportExecutor";
+    public static final String PUSH_EXECUTOR = "pushExecutor";
+
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+
+    public AsyncConfig(Environment environment, MeterRegistry meterRegistry) {
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Bean(name = CLEANUP_EXECUTOR)
+    public ThreadPoolTaskExecutor cleanupExecutor() {
+        return buildExecutor("cleanup", 1, 2, 100);
+    }
+
+    /**
+     * MVC 异步请求（StreamingResponseBody 流式导出）使用的线程池，见 WebConfig
+     */
+    @Bean(name = EXPORT_EXECUTOR)
+    public ThreadPoolTaskExecutor exportExecutor() {
+        return buildExecutor("export", 2, 4, 20);
+    }
+
+    /**
+     * SSE 推送的发送线程池，见 SupportPushService
+     */
+    @Bean(name = PUSH_EXECUTOR)
+    public ThreadPoolTaskExecutor pushExecutor() {
+        return buildExecutor("push", 2, 4, 1000);
+    }
+
+    /**
+     * 未指定线程池的 @Async 方法使用 cleanup 线程池，避免退回无界的 SimpleAsyncTaskExecutor
+     */
+    @Override
+    public Executor getAsyncExecutor() {
+        return cleanupExecutor();
+    }
+
+    @Override
+    public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
+        return (throwable, method, params) ->
+                log.error("异步任务执行失败: {}.{}", method.getDeclaringClass().getSimpleName(), method.getName(), throwable);
+    }
+
+    private ThreadPoolTaskExecutor buildExecutor(String name, int defaultCoreSize, int defaultMaxSize,
+                                                 int defaultQueueCapacity) {
+        int coreSize = property(name, "core-size", defaultCoreSize);
+        int maxSize = Math.max(coreSize, property(name, "max-size", defaultMaxSize));
+        int queueCapacity = property(name, "queue-capacity", defaultQueueCapacity);
+        // 与 Spring Boot 自动注册的 executor.* 指标使用相同的 name 标签（Bean 名称）
+        Counter rejected = Counter.builder("executor.rejected")
+                .tag("name", name + "Executor")
+                .register(meterRegistry);
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(name + "-");
+        executor.setCorePoolSize(coreSize);
+        executor.setMaxPoolSize(maxSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.setRejectedExecutionHandler((runnable, pool) -> {
+            rejected.increment();
+            throw new TaskRejectedException(name + " 线程池已满");
+        });
+        log.info("创建异步线程池: name={}, coreSize={}, maxSize={}, queueCapacity={}",
+                name, coreSize, maxSize, queueCapacity);
+        return executor;
+    }
+
+    private int property(String name, String key, int defaultValue) {
+        return environment.getProperty("app.async." + name + "." + key, Integer.class, defaultValue);
+    }
+}
@@ -0,0 +1,100 @@
+package com.aiplatform.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 统计每个连接从借出到归还的占用时长，按接口（HTTP方法 + 路由模板）记录到 db.connection.hold 指标
+ *
+ * 在处理器映射之前借出的连接（如认证过滤器）记为 "METHOD [filter]"，非请求线程记为 "background"。
+ */
+@Slf4j
+public class ConnectionHoldTimeDataSource extends DelegatingDataSource {
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+    private final long warnThresholdMs;
+
+    public ConnectionHoldTimeDataSource(DataSource target, ObjectProvider<MeterRegistry> meterRegistry, long warnThresholdMs) {
+        super(target);
+        this.meterRegistry = meterRegistry;
+        this.warnThresholdMs = warnThresholdMs;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return track(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return track(super.getConnection(username, password));
+    }
+
+    private Connection track(Connection connection) {
+        long acquiredAt = System.nanoTime();
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            break;
+                    }
+                    if ("close".equals(method.getName()) && released.compareAndSet(false, true)) {
+                        record(System.nanoTime() - acquiredAt);
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                });
+    }
+
+    private void record(long heldNanos) {
+        String endpoint = currentEndpoint();
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            Timer.builder("db.connection.hold")
+                    .description("数据库连接占用时长")
+                    .tag("endpoint", endpoint)
+                    .register(registry)
+                    .record(heldNanos, TimeUnit.NANOSECONDS);
+        }
+        long heldMs = TimeUnit.NANOSECONDS.toMillis(heldNanos);
+        if (heldMs >= warnThresholdMs) {
+            log.warn("数据库连接占用过久: endpoint={}, heldMs={}", endpoint, heldMs);
+        }
+    }
+
+    private String currentEndpoint() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes servletAttributes)) {
+            return "background";
+        }
+        HttpServletRequest request = servletAttributes.getRequest();
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return request.getMethod() + " " + (pattern != null ? pattern : "[filter]");
+    }
+}
@@ -1,5 +1,6 @@
 package com.aiplatform.controller;
 
+import com.aiplatform.dto.SupportDTO;
 import com.aiplatform.dto.UserDTO;
 import com.aiplatform.entity.AdminMessage;
 import com.aiplatform.entity.User;
@@ -7,6 +8,11 @@ import com.aiplatform.repository.AdminMessageRepository;
 import com.aiplatform.repository.UserRepository;
 import com.aiplatform.repository.SupportChatRepository;
 import com.aiplatform.entity.SupportChat;
+import com.aiplatform.security.AuthenticatedUser;
+import com.aiplatform.security.CurrentUser;
+import com.aiplatform.service.AdminStatisticsService;
+import com.aiplatform.service.SupportInboxService;
+import com.aiplatform.service.SupportPushService;
 import com.aiplatform.service.UserService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
@@ -15,11 +21,13 @@ import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -33,6 +41,9 @@ import java.util.Optional;
 public class AdminController {
 
     private final UserService userService;
+    private final AdminStatisticsService adminStatisticsService;
+    private final SupportInboxService supportInboxService;
+    private final SupportPushService supportPushService;
     private final UserRepository userRepository;
     private final AdminMessageRepository adminMessageRepository;
     private final SupportChatRepository supportChatRepository;
@@ -99,7 +110,14 @@ public class AdminController {
     @Operation(summary = "获取用户统计信息", description = "获取系统用户的统计数据")
     @GetMapping("/statistics")
     public ResponseEntity<UserDTO.UserStatistics> getUserStatistics() {
-        UserDTO.UserStatistics statistics = userService.getUserStatistics();
+        UserDTO.UserStatistics statistics = adminStatisticsService.getStatistics();
+        return ResponseEntity.ok(statistics);
+    }
+
+    @Operation(summary = "刷新用户统计信息", description = "重新生成用户统计快照")
+    @PostMapping("/statistics/refresh")
+    public ResponseEntity<UserDTO.UserStatistics> refreshUserStatistics() {
+        UserDTO.UserStatistics statistics = adminStatisticsService.refreshNow();
         return ResponseEntity.ok(statistics);
     }
 
@@ -107,7 +125,8 @@ public class AdminController {
     @PostMapping("/users/{userId}/message")
     public ResponseEntity<String> sendMessageToUser(
             @PathVariable Long userId,
-            @RequestBody Map<String, Object> request) {
+            @RequestBody Map<String, Object> request,
+            @CurrentUser Long adminId) {
         
         try {
             log.info("管理员向用户 {} 发送消息", userId);
@@ -125,18 +144,9 @@ public class AdminController {
                 return ResponseEntity.notFound().build();
             }
             
-            // 获取当前管理员用户
-            Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-            String adminEmail = auth.getName();
-            Optional<User> adminUser = userRepository.findByEmail(adminEmail);
-            
-            if (!adminUser.isPresent()) {
-                return ResponseEntity.status(403).body("管理员用户不存在");
-            }
-            
             // 创建管理员消息
             AdminMessage adminMessage = new AdminMessage();
-            adminMessage.setFromUserId(adminUser.get().getId());
+            adminMessage.setFromUserId(adminId);
             adminMessage.setToUserId(userId);
             adminMessage.setMessageType(AdminMessage.MessageType.PRIVATE);
             adminMessage.setSubject(title);
@@ -145,7 +155,7 @@ public class AdminController {
             
             adminMessageRepository.save(adminMessage);
             
-            log.info("消息发送成功: 从用户 {} 发送到用户 {}", adminUser.get().getId(), userId);
+            log.info("消息发送成功: 从用户 {} 发送到用户 {}", adminId, userId);
             return ResponseEntity.ok("消息发送成功");
             
         } catch (Exception e) {
@@ -223,7 +233,7 @@ public class AdminController {
             log.info("管理员测试接口被调用");
             
             // 简单统计用户数
-            UserDTO.UserStatistics stats = userService.getUserStatistics();
+            UserDTO.UserStatistics stats = adminStatisticsService.getStatistics();
             
             Map<String, Object> result = new HashMap<>();
             result.put("message", "管理员权限正常");
@@ -243,75 +253,17 @@ public class AdminController {
     /**
      * 客服工作台 - 获取客户对话列表
      */
-    @Operation(summary = "获取客户对话列表", description = "客服工作台获取所有客户对话")
+    @Operation(summary = "获取客户对话列表", description = "客服工作台分页获取客户对话（最后一条消息与未读数量），不包含对话内容")
     @GetMapping("/support/customer-chats")
     @PreAuthorize("hasRole('support')")
-    public ResponseEntity<java.util.List<Map<String, Object>>> getCustomerChats() {
+    public ResponseEntity<SupportDTO.InboxPage> getCustomerChats(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(required = false) Integer size) {
         
         try {
-            // 获取当前认证信息进行调试
-            Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-            log.info("客服工作台访问请求:");
-            log.info("- 用户名: {}", auth.getName());
-            log.info("- 权限列表: {}", auth.getAuthorities());
-            log.info("- 是否已认证: {}", auth.isAuthenticated());
-            
-            log.info("开始获取客户对话列表");
-            
-            // 获取所有有对话的用户ID列表
-            java.util.List<Long> userIds = supportChatRepository.findDistinctUserIdsOrderByLatestMessage();
-            
-            java.util.List<Map<String, Object>> customerChats = new java.util.ArrayList<>();
-            
-            // 为每个用户创建对话项
-            for (Long userId : userIds) {
-                // 获取用户信息
-                Optional<User> userOpt = userRepository.findById(userId);
-                if (!userOpt.isPresent()) continue;
-                
-                User user = userOpt.get();
-                
-                // 获取该用户的所有对话记录
-                java.util.List<SupportChat> userChats = supportChatRepository.findByUserIdOrderByCreatedAtAsc(userId);
-                if (userChats.isEmpty()) continue;
-                
-                // 获取最新消息
-                SupportChat latestMessage = userChats.get(userChats.size() - 1);
-                
-                // 统计未读消息数量（用户发送给客服的未读消息）
-                long unreadCount = userChats.stream()
-                        .filter(chat -> chat.getSenderType() == SupportChat.SenderType.USER && !chat.getIsRead())
-                        .count();
-                
-                Map<String, Object> chatInfo = new HashMap<>();
-                chatInfo.put("id", userId);
-                chatInfo.put("customerId", userId);
-                chatInfo.put("customerName", user.getUsername());
-                chatInfo.put("customerEmail", user.getEmail());
-                chatInfo.put("lastMessage", latestMessage.getContent());
-                chatInfo.put("updatedAt", latestMessage.getCreatedAt());
-                chatInfo.put("unreadCount", unreadCount);
-                
-                // 添加消息列表
-                java.util.List<Map<String, Object>> messages = userChats.stream()
-                        .map(chat -> {
-                            Map<String, Object> messageData = new HashMap<>();
-                            messageData.put("id", chat.getId());
-                            messageData.put("content", chat.getContent());
-                            messageData.put("isFromCustomer", chat.getSenderType() == SupportChat.SenderType.USER);
-                            messageData.put("senderType", chat.getSenderType().name());
-                            messageData.put("createdAt", chat.getCreatedAt());
-                            messageData.put("isRead", chat.getIsRead());
-                            return messageData;
-                        })
-                        .collect(java.util.stream.Collectors.toList());
-                
-                chatInfo.put("messages", messages);
-                customerChats.add(chatInfo);
-            }
-            
-            log.info("获取到 {} 个客户对话", customerChats.size());
-            return ResponseEntity.ok(customerChats);
+            SupportDTO.InboxPage inbox = supportInboxService.getInbox(page, size);
+            log.info("获取到 {} 个客户对话: page={}, total={}", inbox.getCustomers().size(), page, inbox.getTotal());
+            return ResponseEntity.ok(inbox);
             
         } catch (Exception e) {
             log.error("获取客户对话列表失败: {}", e.getMessage(), e);
@@ -319,13 +271,45 @@ public class AdminController {
         }
     }
 
+    /**
+     * 客服工作台 - 获取某个客户的对话内容
+     */
+    @Operation(summary = "获取客户对话内容", description = "按页获取客户对话消息，beforeId 为空时返回最新一页")
+    @GetMapping("/support/customer-chats/{customerId}/messages")
+    @PreAuthorize("hasRole('support')")
+    public ResponseEntity<SupportDTO.TranscriptPage> getCustomerMessages(
+            @PathVariable Long customerId,
+            @RequestParam(required = false) Long beforeId,
+            @RequestParam(required = false) Integer size) {
+        
+        try {
+            return ResponseEntity.ok(supportInboxService.getTranscript(customerId, beforeId, size));
+        } catch (Exception e) {
+            log.error("获取客户对话内容失败: {}", e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * 客服工作台 - 订阅客户对话推送
+     */
+    @Operation(summary = "订阅客户对话推送", description = "SSE推送所有客户的新消息与未读数量；重连时通过 Last-Event-ID 补发断线期间的消息")
+    @GetMapping(value = "/support/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasRole('support')")
+    public SseEmitter streamCustomerChats(
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return supportPushService.subscribeSupport(lastEventId);
+    }
+
     /**
      * 客服回复客户
      */
     @Operation(summary = "客服回复客户", description = "客服向客户发送回复消息")
     @PostMapping("/support/reply")
     @PreAuthorize("hasRole('support')")
-    public ResponseEntity<String> replyToCustomer(@RequestBody Map<String, Object> request) {
+    public ResponseEntity<String> replyToCustomer(
+            @RequestBody Map<String, Object> request,
+            @CurrentUser AuthenticatedUser supportUser) {
         
         try {
             log.info("客服回复客户");
@@ -337,15 +321,6 @@ public class AdminController {
                 return ResponseEntity.badRequest().body("回复内容不能为空");
             }
             
-            // 获取当前客服用户
-            Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-            String supportEmail = auth.getName();
-            Optional<User> supportUser = userRepository.findByEmail(supportEmail);
-            
-            if (!supportUser.isPresent()) {
-                return ResponseEntity.status(403).body("客服用户不存在");
-            }
-            
             // 验证客户存在
             Optional<User> customer = userRepository.findById(customerId);
             if (!customer.isPresent()) {
@@ -355,23 +330,21 @@ public class AdminController {
             // 创建客服回复记录
             SupportChat supportReply = new SupportChat();
             supportReply.setUserId(customerId);
-            supportReply.setSupportId(supportUser.get().getId());
+            supportReply.setSupportId(supportUser.getId());
             supportReply.setContent(content);
             supportReply.setSenderType(SupportChat.SenderType.SUPPORT);
             supportReply.setIsRead(false);
             
             supportChatRepository.save(supportReply);
             
-            // 标记该客户的用户消息为已读
-            java.util.List<SupportChat> userMessages = supportChatRepository.findByUserIdOrderByCreatedAtAsc(customerId);
-            for (SupportChat userMsg : userMessages) {
-                if (userMsg.getSenderType() == SupportChat.SenderType.USER && !userMsg.getIsRead()) {
-                    userMsg.setIsRead(true);
-                    supportChatRepository.save(userMsg);
-                }
+            // 客服已读水位推进到本条回复，之前的客户消息都视为已读
+            boolean advanced = supportInboxService.markRead(customerId, SupportChat.SenderType.SUPPORT, supportReply.getId());
+            supportPushService.onMessageSaved(supportReply);
+            if (advanced) {
+                supportPushService.onReadMarkChanged(customerId, SupportChat.SenderType.SUPPORT);
             }
             
-            log.info("客服 {} 回复客户 {} 成功", supportUser.get().getUsername(), customer.get().getUsername());
+            log.info("客服 {} 回复客户 {} 成功", supportUser.getDisplayName(), customer.get().getUsername());
             
             return ResponseEntity.ok("回复发送成功");
             
@@ -1,19 +1,21 @@
 package com.aiplatform.controller;
 
+import com.aiplatform.dto.ChatDTO;
 import com.aiplatform.entity.Chat;
 import com.aiplatform.entity.Message;
-import com.aiplatform.entity.User;
 import com.aiplatform.service.ChatService;
-import com.aiplatform.repository.UserRepository;
+import com.aiplatform.service.ChatStreamService;
+import com.aiplatform.service.IdempotencyService;
 import com.aiplatform.exception.BusinessException;
+import com.aiplatform.security.CurrentUser;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.HashMap;
 import java.util.List;
@@ -27,17 +29,17 @@ import java.util.Map;
 public class ChatController {
 
     private final ChatService chatService;
-    private final UserRepository userRepository;
+    private final ChatStreamService chatStreamService;
+    private final IdempotencyService idempotencyService;
 
     @Operation(summary = "创建聊天会话", description = "创建新的聊天会话")
     @PostMapping("/create")
-    public ResponseEntity<Map<String, Object>> createChat(@RequestBody Map<String, Object> request) {
+    public ResponseEntity<Map<String, Object>> createChat(
+            @RequestBody Map<String, Object> request,
+            @CurrentUser Long userId) {
         try {
             log.info("创建聊天会话: {}", request);
             
-            // 获取当前用户ID
-            Long userId = getCurrentUserId();
-            
             // 解析请求参数
             String title = (String) request.get("title");
             String aiTypeStr = (String) request.get("aiType");
@@ -78,18 +80,27 @@ public class ChatController {
         }
     }
 
-    @Operation(summary = "发送消息", description = "向聊天会话发送消息")
+    @Operation(summary = "发送消息", description = "向聊天会话发送消息；带 Idempotency-Key 请求头的重试返回原请求的响应，不会重复保存和生成")
     @PostMapping("/{chatId}/message")
     public ResponseEntity<Map<String, Object>> sendMessage(
             @PathVariable Long chatId, 
-            @RequestBody Map<String, Object> request) {
+            @RequestBody Map<String, Object> request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @CurrentUser Long userId) {
         
+        try {
+            return idempotencyService.execute(userId, idempotencyKey, "chat:" + chatId + ":" + request.get("content"),
+                    () -> doSendMessage(chatId, request, userId));
+        } catch (BusinessException e) {
+            log.error("发送消息业务异常: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(createErrorResponse(e.getMessage()));
+        }
+    }
+
+    private ResponseEntity<Map<String, Object>> doSendMessage(Long chatId, Map<String, Object> request, Long userId) {
         try {
             log.info("发送消息到聊天 {}: {}", chatId, request);
             
-            // 获取当前用户ID
-            Long userId = getCurrentUserId();
-            
             String userMessage = (String) request.get("content");
             String roleStr = (String) request.get("role");
             
@@ -99,16 +110,17 @@ public class ChatController {
             
             log.info("用户消息: {}", userMessage);
             
-            // 保存用户消息
-            Message userMessageEntity = chatService.sendMessage(
-                chatId, userId, userMessage, Message.MessageRole.user);
+            // 第一阶段：保存用户消息（短事务）
+            ChatDTO.PromptResult prompt = chatService.persistPrompt(chatId, userId, userMessage);
+            // 事务已结束，等待消息写入时不占用数据库连接
+            Message userMessageEntity = chatService.awaitDurable(prompt.getUserMessage());
             
-            // 生成AI回复
-            String aiResponse = chatService.generateAIResponse(userMessage);
+            // 第二阶段：在事务外生成AI回复，不占用数据库连接
+            String aiResponse = chatService.generateAIResponse(chatId, prompt.getAiType(), userMessage,
+                    prompt.isResponseCacheEnabled());
             
-            // 保存AI回复消息
-            Message aiMessageEntity = chatService.sendMessage(
-                chatId, userId, aiResponse, Message.MessageRole.assistant);
+            // 第三阶段：保存AI回复消息（短事务）
+            Message aiMessageEntity = chatService.awaitDurable(chatService.persistReply(chatId, userId, aiResponse));
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -127,22 +139,63 @@ public class ChatController {
         }
     }
 
-    @Operation(summary = "获取聊天历史", description = "获取指定聊天会话的历史消息")
+    @Operation(summary = "流式发送消息", description = "向聊天会话发送消息，并以SSE事件增量返回AI回复")
+    @RequestMapping(value = "/{chatId}/stream",
+            method = {RequestMethod.GET, RequestMethod.POST},
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamMessage(
+            @PathVariable Long chatId,
+            @RequestParam(required = false) String content,
+            @RequestBody(required = false) Map<String, Object> request,
+            @CurrentUser Long userId) {
+
+        log.info("流式发送消息到聊天 {}", chatId);
+
+        // GET 通过查询参数传递内容，POST 通过请求体传递
+        String userMessage = content;
+        if (request != null && request.get("content") != null) {
+            userMessage = (String) request.get("content");
+        }
+
+        if (userMessage == null || userMessage.trim().isEmpty()) {
+            return createErrorEmitter("消息内容不能为空");
+        }
+
+        try {
+            return chatStreamService.stream(chatId, userId, userMessage);
+        } catch (BusinessException e) {
+            log.error("流式发送消息业务异常: {}", e.getMessage());
+            return createErrorEmitter(e.getMessage());
+        }
+    }
+
+    @Operation(summary = "获取聊天历史", description = "获取指定聊天会话的历史消息；传入 before/after/limit 时按游标分页")
     @GetMapping("/{chatId}/messages")
-    public ResponseEntity<Map<String, Object>> getChatMessages(@PathVariable Long chatId) {
+    public ResponseEntity<Map<String, Object>> getChatMessages(
+            @PathVariable Long chatId,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit,
+            @CurrentUser Long userId) {
         try {
             log.info("获取聊天历史: {}", chatId);
             
-            // 获取当前用户ID
-            Long userId = getCurrentUserId();
-            
-            // 获取消息列表
-            List<Message> messages = chatService.getChatMessages(chatId, userId);
-            
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
-            response.put("messages", messages);
-            response.put("count", messages.size());
+            
+            if (before == null && after == null && limit == null) {
+                // 未指定分页参数时保持原有行为，返回全部消息
+                List<Message> messages = chatService.getChatMessages(chatId, userId);
+                response.put("messages", messages);
+                response.put("count", messages.size());
+            } else {
+                ChatDTO.MessagePage page = chatService.getChatMessagesPage(chatId, userId, before, after, limit);
+                response.put("messages", page.getMessages());
+                response.put("count", page.getMessages().size());
+                response.put("hasMore", page.isHasMore());
+                response.put("olderCursor", page.getOlderCursor());
+                response.put("newerCursor", page.getNewerCursor());
+            }
             
             return ResponseEntity.ok(response);
             
@@ -157,13 +210,10 @@ public class ChatController {
 
     @Operation(summary = "删除聊天会话", description = "删除指定的聊天会话")
     @DeleteMapping("/{chatId}")
-    public ResponseEntity<Map<String, Object>> deleteChat(@PathVariable Long chatId) {
+    public ResponseEntity<Map<String, Object>> deleteChat(@PathVariable Long chatId, @CurrentUser Long userId) {
         try {
             log.info("删除聊天会话: {}", chatId);
             
-            // 获取当前用户ID
-            Long userId = getCurrentUserId();
-            
             // 删除聊天会话
             chatService.deleteChat(chatId, userId);
             
@@ -184,11 +234,10 @@ public class ChatController {
 
     @Operation(summary = "切换收藏状态", description = "切换聊天会话的收藏状态")
     @PatchMapping("/{chatId}/favorite")
-    public ResponseEntity<Map<String, Object>> toggleFavorite(@PathVariable Long chatId) {
+    public ResponseEntity<Map<String, Object>> toggleFavorite(@PathVariable Long chatId, @CurrentUser Long userId) {
         try {
             log.info("切换收藏状态: {}", chatId);
             
-            Long userId = getCurrentUserId();
             Chat chat = chatService.toggleFavorite(chatId, userId);
             
             Map<String, Object> response = new HashMap<>();
@@ -209,11 +258,10 @@ public class ChatController {
 
     @Operation(summary = "切换保护状态", description = "切换聊天会话的保护状态")
     @PatchMapping("/{chatId}/protect")
-    public ResponseEntity<Map<String, Object>> toggleProtection(@PathVariable Long chatId) {
+    public ResponseEntity<Map<String, Object>> toggleProtection(@PathVariable Long chatId, @CurrentUser Long userId) {
         try {
             log.info("切换保护状态: {}", chatId);
             
-            Long userId = getCurrentUserId();
             Chat chat = chatService.toggleProtection(chatId, userId);
             
             Map<String, Object> response = new HashMap<>();
@@ -232,15 +280,47 @@ public class ChatController {
         }
     }
 
+    @Operation(summary = "设置回复缓存", description = "设置聊天会话是否允许复用相同提示词的缓存回复")
+    @PatchMapping("/{chatId}/response-cache")
+    public ResponseEntity<Map<String, Object>> setResponseCache(
+            @PathVariable Long chatId,
+            @RequestBody Map<String, Object> request,
+            @CurrentUser Long userId) {
+        try {
+            log.info("设置回复缓存: {}", chatId);
+            
+            Object enabled = request.get("enabled");
+            if (!(enabled instanceof Boolean)) {
+                return ResponseEntity.badRequest().body(createErrorResponse("enabled 必须为布尔值"));
+            }
+            
+            Chat chat = chatService.setResponseCacheEnabled(chatId, userId, (Boolean) enabled);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("responseCacheEnabled", chat.getResponseCacheEnabled());
+            response.put("message", chat.getResponseCacheEnabled() ? "已允许使用缓存回复" : "已关闭缓存回复");
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (BusinessException e) {
+            log.error("设置回复缓存业务异常: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(createErrorResponse(e.getMessage()));
+        } catch (Exception e) {
+            log.error("设置回复缓存系统异常: ", e);
+            return ResponseEntity.internalServerError().body(createErrorResponse("操作失败"));
+        }
+    }
+
     @Operation(summary = "更新对话标题", description = "更新聊天会话的标题")
     @PatchMapping("/{chatId}/title")
     public ResponseEntity<Map<String, Object>> updateTitle(
             @PathVariable Long chatId, 
-            @RequestBody Map<String, Object> request) {
+            @RequestBody Map<String, Object> request,
+            @CurrentUser Long userId) {
         try {
             log.info("更新对话标题: {}", chatId);
             
-            Long userId = getCurrentUserId();
             String title = (String) request.get("title");
             
             if (title == null || title.trim().isEmpty()) {
@@ -265,22 +345,16 @@ public class ChatController {
         }
     }
 
-    // 辅助方法：获取当前用户ID
-    private Long getCurrentUserId() {
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        if (authentication == null || !authentication.isAuthenticated()) {
-            throw new BusinessException("用户未登录");
+    // 辅助方法：创建只包含一个错误事件的SSE响应
+    private SseEmitter createErrorEmitter(String message) {
+        SseEmitter emitter = new SseEmitter();
+        try {
+            emitter.send(SseEmitter.event().name("error").data(createErrorResponse(message)));
+            emitter.complete();
+        } catch (Exception e) {
+            emitter.completeWithError(e);
         }
-        
-        String principal = authentication.getName();
-        log.debug("当前认证主体: {}", principal);
-        
-        // 首先尝试通过邮箱查找用户，如果失败再尝试用户名
-        User user = userRepository.findByEmail(principal)
-            .orElseGet(() -> userRepository.findByUsername(principal)
-                .orElseThrow(() -> new BusinessException("用户不存在: " + principal)));
-        
-        return user.getId();
+        return emitter;
     }
 
     // 辅助方法：创建错误响应
@@ -1,26 +1,28 @@
 package com.aiplatform.controller;
 
-import com.aiplatform.entity.Chat;
-import com.aiplatform.entity.Message;
-import com.aiplatform.entity.User;
+import com.aiplatform.dto.ChatDTO;
 import com.aiplatform.entity.UserSettings;
+import com.aiplatform.entity.UserStats;
 import com.aiplatform.repository.ChatRepository;
-import com.aiplatform.repository.MessageRepository;
-import com.aiplatform.repository.UserRepository;
 import com.aiplatform.repository.UserSettingsRepository;
+import com.aiplatform.exception.BusinessException;
+import com.aiplatform.security.CurrentUser;
+import com.aiplatform.service.ChatPurgeService;
+import com.aiplatform.service.DataExportService;
+import com.aiplatform.service.UserStatsService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -33,19 +35,15 @@ import java.util.Optional;
 public class DataController {
 
     private final ChatRepository chatRepository;
-    private final MessageRepository messageRepository;
-    private final UserRepository userRepository;
     private final UserSettingsRepository userSettingsRepository;
+    private final DataExportService dataExportService;
+    private final ChatPurgeService chatPurgeService;
+    private final UserStatsService userStatsService;
 
     @Operation(summary = "获取用户设置", description = "获取用户数据管理设置")
     @GetMapping("/settings")
-    public ResponseEntity<Map<String, Object>> getSettings() {
+    public ResponseEntity<Map<String, Object>> getSettings(@CurrentUser Long userId) {
         try {
-            String email = getCurrentUserEmail();
-            User user = userRepository.findByEmail(email)
-                    .orElseThrow(() -> new RuntimeException("用户不存在"));
-            
-            Long userId = user.getId();
             log.info("获取用户设置: 用户ID={}", userId);
             
             // 从数据库获取用户设置
@@ -86,13 +84,10 @@ public class DataController {
 
     @Operation(summary = "更新用户设置", description = "更新用户数据管理设置")
     @PutMapping("/settings")
-    public ResponseEntity<Map<String, Object>> updateSettings(@RequestBody Map<String, Object> settingsRequest) {
+    public ResponseEntity<Map<String, Object>> updateSettings(
+            @RequestBody Map<String, Object> settingsRequest,
+            @CurrentUser Long userId) {
         try {
-            String email = getCurrentUserEmail();
-            User user = userRepository.findByEmail(email)
-                    .orElseThrow(() -> new RuntimeException("用户不存在"));
-            
-            Long userId = user.getId();
             log.info("更新用户设置: 用户ID={}, 设置={}", userId, settingsRequest);
             
             // 查找或创建用户设置
@@ -139,28 +134,21 @@ public class DataController {
 
     @Operation(summary = "获取数据统计", description = "获取用户数据统计信息")
     @GetMapping("/statistics")
-    public ResponseEntity<Map<String, Object>> getStatistics() {
+    public ResponseEntity<Map<String, Object>> getStatistics(@CurrentUser Long userId) {
         try {
-            String email = getCurrentUserEmail();
-            User user = userRepository.findByEmail(email)
-                    .orElseThrow(() -> new RuntimeException("用户不存在"));
-            
-            Long userId = user.getId();
             log.info("获取数据统计: 用户ID={}", userId);
             
-            // 获取真实统计数据
-            long totalChats = chatRepository.countByUserId(userId);
-            long totalMessages = messageRepository.countByUserId(userId);
-            long protectedChats = chatRepository.countByUserIdAndIsProtectedTrue(userId);
+            // 读取用户统计行
+            UserStats userStats = userStatsService.getStats(userId);
             
-            // 计算存储占用（简单估算）
-            double storageMB = (totalMessages * 0.5) / 1024; // 假设每条消息平均0.5KB
+            // 存储占用按消息内容字节数计算
+            double storageMB = userStats.getContentBytes() / 1024.0 / 1024;
             String storageSize = String.format("%.1f MB", storageMB);
             
             Map<String, Object> stats = new HashMap<>();
-            stats.put("totalChats", totalChats);
-            stats.put("totalMessages", totalMessages);
-            stats.put("protectedChats", protectedChats);
+            stats.put("totalChats", userStats.getChatCount());
+            stats.put("totalMessages", userStats.getMessageCount());
+            stats.put("protectedChats", userStats.getProtectedCount());
             stats.put("totalSize", storageSize);
             stats.put("oldChats", calculateOldChats(userId));
             
@@ -173,30 +161,16 @@ public class DataController {
 
     @Operation(summary = "清理过期数据", description = "清理用户的过期聊天数据")
     @PostMapping("/cleanup")
-    @Transactional
-    public ResponseEntity<Map<String, Object>> cleanupData() {
+    public ResponseEntity<Map<String, Object>> cleanupData(@CurrentUser Long userId) {
         try {
-            String email = getCurrentUserEmail();
-            User user = userRepository.findByEmail(email)
-                    .orElseThrow(() -> new RuntimeException("用户不存在"));
-            
-            Long userId = user.getId();
             log.info("清理过期数据: 用户ID={}", userId);
             
             // 计算30天前的时间
             LocalDateTime cutoffDate = LocalDateTime.now().minusDays(30);
             
-            // 查找需要清理的聊天（非保护且超过30天）
-            List<Chat> chatsToCleanup = chatRepository.findChatsToCleanup(userId, cutoffDate);
-            
-            int deletedChats = 0;
-            for (Chat chat : chatsToCleanup) {
-                // 删除聊天的所有消息
-                messageRepository.deleteByChatId(chat.getId());
-                // 删除聊天记录
-                chatRepository.delete(chat);
-                deletedChats++;
-            }
+            // 分批删除非保护且超过30天的聊天及其消息
+            ChatDTO.PurgeResult result = chatPurgeService.purgeExpired(userId, cutoffDate);
+            int deletedChats = result.getDeletedChats();
             
             // 计算释放的空间
             double freedSpaceMB = deletedChats * 0.5; // 简单估算
@@ -206,6 +180,8 @@ public class DataController {
             response.put("success", true);
             response.put("message", "数据清理完成");
             response.put("deletedChats", deletedChats);
+            response.put("deletedMessages", result.getDeletedMessages());
+            response.put("elapsedMs", result.getElapsedMs());
             response.put("freedSpace", freedSpace);
             
             return ResponseEntity.ok(response);
@@ -217,39 +193,26 @@ public class DataController {
 
     @Operation(summary = "删除所有数据", description = "删除用户的所有非保护数据")
     @DeleteMapping("/all")
-    @Transactional
-    public ResponseEntity<Map<String, Object>> deleteAllData(@RequestBody Map<String, Object> request) {
+    public ResponseEntity<Map<String, Object>> deleteAllData(
+            @RequestBody Map<String, Object> request,
+            @CurrentUser Long userId) {
         try {
-            String email = getCurrentUserEmail();
-            User user = userRepository.findByEmail(email)
-                    .orElseThrow(() -> new RuntimeException("用户不存在"));
-            
             String confirmText = (String) request.get("confirmText");
             if (!"CONFIRM_DELETE".equals(confirmText)) {
                 return ResponseEntity.badRequest().body(Map.of("error", "确认文本不正确"));
             }
             
-            Long userId = user.getId();
             log.info("删除所有数据: 用户ID={}", userId);
             
-            // 获取所有非保护的聊天
-            List<Chat> allChats = chatRepository.findByUserIdOrderByLastActivityDesc(userId);
-            int deletedChats = 0;
-            
-            for (Chat chat : allChats) {
-                if (!chat.getIsProtected()) {
-                    // 删除聊天的所有消息
-                    messageRepository.deleteByChatId(chat.getId());
-                    // 删除聊天记录
-                    chatRepository.delete(chat);
-                    deletedChats++;
-                }
-            }
+            // 分批删除所有非保护的聊天及其消息
+            ChatDTO.PurgeResult result = chatPurgeService.purgeUnprotected(userId);
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("message", "所有非保护数据已删除");
-            response.put("deletedChats", deletedChats);
+            response.put("deletedChats", result.getDeletedChats());
+            response.put("deletedMessages", result.getDeletedMessages());
+            response.put("elapsedMs", result.getElapsedMs());
             
             return ResponseEntity.ok(response);
         } catch (Exception e) {
@@ -258,71 +221,37 @@ public class DataController {
         }
     }
 
-    @Operation(summary = "导出数据", description = "导出用户的聊天数据")
+    @Operation(summary = "导出数据", description = "流式导出用户的聊天数据，format=json|ndjson，gzip=true 时压缩传输")
     @GetMapping("/export")
-    public ResponseEntity<Map<String, Object>> exportData() {
+    public ResponseEntity<StreamingResponseBody> exportData(
+            @RequestParam(defaultValue = "json") String format,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            @CurrentUser Long userId,
+            @CurrentUser String email) {
+        log.info("导出数据: 用户ID={}, format={}, gzip={}", userId, format, gzip);
+        
+        DataExportService.Format exportFormat;
         try {
-            String email = getCurrentUserEmail();
-            User user = userRepository.findByEmail(email)
-                    .orElseThrow(() -> new RuntimeException("用户不存在"));
-            
-            Long userId = user.getId();
-            log.info("导出数据: 用户ID={}", userId);
-            
-            // 获取用户所有聊天
-            List<Chat> chats = chatRepository.findByUserIdOrderByLastActivityDesc(userId);
-            
-            Map<String, Object> exportData = new HashMap<>();
-            exportData.put("exportTime", LocalDateTime.now().toString());
-            exportData.put("userEmail", email);
-            exportData.put("totalChats", chats.size());
-            
-            // 添加聊天数据
-            List<Map<String, Object>> chatData = chats.stream().map(chat -> {
-                Map<String, Object> chatInfo = new HashMap<>();
-                chatInfo.put("id", chat.getId());
-                chatInfo.put("title", chat.getTitle());
-                chatInfo.put("aiType", chat.getAiType().name());
-                chatInfo.put("createdAt", chat.getCreatedAt().toString());
-                chatInfo.put("lastActivity", chat.getLastActivity().toString());
-                chatInfo.put("isFavorite", chat.getIsFavorite());
-                chatInfo.put("isProtected", chat.getIsProtected());
-                
-                // 获取聊天消息
-                List<Message> messages = messageRepository.findByChatIdOrderByCreatedAtAsc(chat.getId());
-                List<Map<String, Object>> messageData = messages.stream().map(message -> {
-                    Map<String, Object> msgInfo = new HashMap<>();
-                    msgInfo.put("role", message.getRole().name());
-                    msgInfo.put("content", message.getContent());
-                    msgInfo.put("createdAt", message.getCreatedAt().toString());
-                    return msgInfo;
-                }).toList();
-                
-                chatInfo.put("messages", messageData);
-                return chatInfo;
-            }).toList();
-            
-            exportData.put("chats", chatData);
-            
-            return ResponseEntity.ok(exportData);
-        } catch (Exception e) {
-            log.error("导出数据失败", e);
-            return ResponseEntity.status(500).body(Map.of("error", "导出数据失败"));
+            exportFormat = DataExportService.Format.valueOf(format.toLowerCase());
+        } catch (IllegalArgumentException e) {
+            throw new BusinessException("不支持的导出格式: " + format);
+        }
+        
+        String filename = "chat-data-" + LocalDate.now() + (exportFormat == DataExportService.Format.ndjson ? ".ndjson" : ".json");
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(exportFormat == DataExportService.Format.ndjson
+                        ? MediaType.parseMediaType("application/x-ndjson")
+                        : MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"");
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
         }
+        return response.body(dataExportService.export(userId, email, exportFormat, gzip));
     }
 
     // 计算过期对话数量
     private long calculateOldChats(Long userId) {
         LocalDateTime cutoffDate = LocalDateTime.now().minusDays(30);
-        return chatRepository.findChatsToCleanup(userId, cutoffDate).size();
-    }
-
-    // 获取当前用户邮箱
-    private String getCurrentUserEmail() {
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        if (authentication == null || !authentication.isAuthenticated()) {
-            throw new RuntimeException("用户未登录");
-        }
-        return authentication.getName();
+        return chatRepository.countChatsToCleanup(userId, cutoffDate);
     }
 } 
\ No newline at end of file
@@ -1,12 +1,15 @@
 package com.aiplatform.controller;
 
+import com.aiplatform.dto.ChatDTO;
 import com.aiplatform.entity.Chat;
-import com.aiplatform.entity.Message;
-import com.aiplatform.entity.User;
+import com.aiplatform.entity.UserStats;
 import com.aiplatform.service.ChatService;
-import com.aiplatform.repository.UserRepository;
+import com.aiplatform.service.UserStatsService;
 import com.aiplatform.repository.ChatRepository;
+import com.aiplatform.search.MessageSearchService;
+import com.aiplatform.search.TitleSuggestionService;
 import com.aiplatform.exception.BusinessException;
+import com.aiplatform.security.CurrentUser;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
@@ -15,8 +18,6 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDateTime;
@@ -34,7 +35,9 @@ public class HistoryController {
 
     private final ChatService chatService;
     private final ChatRepository chatRepository;
-    private final UserRepository userRepository;
+    private final MessageSearchService messageSearchService;
+    private final TitleSuggestionService titleSuggestionService;
+    private final UserStatsService userStatsService;
 
     @Operation(summary = "获取用户对话列表", description = "获取当前用户的对话历史列表")
     @GetMapping("/chats")
@@ -44,12 +47,12 @@ public class HistoryController {
             @RequestParam(required = false) String keyword,
             @RequestParam(required = false) String timeFilter,
             @RequestParam(required = false) String aiType,
-            @RequestParam(required = false) Boolean isFavorite) {
+            @RequestParam(required = false) Boolean isFavorite,
+            @CurrentUser Long userId) {
         
         try {
             log.info("获取用户对话列表: page={}, size={}, keyword={}", page, size, keyword);
             
-            Long userId = getCurrentUserId();
             Pageable pageable = PageRequest.of(page, size);
             
             Page<Chat> chatPage;
@@ -121,25 +124,35 @@ public class HistoryController {
         }
     }
 
-    @Operation(summary = "获取对话详情", description = "获取指定对话的详细信息和消息列表")
+    @Operation(summary = "获取对话详情", description = "获取指定对话的详细信息和消息列表；传入 before/after/limit 时按游标分页")
     @GetMapping("/chats/{chatId}")
-    public ResponseEntity<Map<String, Object>> getChatDetail(@PathVariable Long chatId) {
+    public ResponseEntity<Map<String, Object>> getChatDetail(
+            @PathVariable Long chatId,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit,
+            @CurrentUser Long userId) {
         try {
             log.info("获取对话详情: chatId={}", chatId);
             
-            Long userId = getCurrentUserId();
-            
             // 验证对话存在且属于当前用户
             Chat chat = chatRepository.findByIdAndUserId(chatId, userId)
                 .orElseThrow(() -> new BusinessException("对话不存在或无权限访问"));
             
-            // 获取消息列表
-            List<Message> messages = chatService.getChatMessages(chatId, userId);
-            
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("chat", chat);
-            response.put("messages", messages);
+            
+            if (before == null && after == null && limit == null) {
+                // 未指定分页参数时保持原有行为，返回全部消息
+                response.put("messages", chatService.getChatMessages(chatId, userId));
+            } else {
+                ChatDTO.MessagePage page = chatService.getChatMessagesPage(chatId, userId, before, after, limit);
+                response.put("messages", page.getMessages());
+                response.put("hasMore", page.isHasMore());
+                response.put("olderCursor", page.getOlderCursor());
+                response.put("newerCursor", page.getNewerCursor());
+            }
             
             return ResponseEntity.ok(response);
             
@@ -154,21 +167,17 @@ public class HistoryController {
 
     @Operation(summary = "获取用户统计信息", description = "获取用户的对话统计数据")
     @GetMapping("/stats")
-    public ResponseEntity<Map<String, Object>> getUserStats() {
+    public ResponseEntity<Map<String, Object>> getUserStats(@CurrentUser Long userId) {
         try {
             log.info("获取用户统计信息");
             
-            Long userId = getCurrentUserId();
-            
             // 统计各种数据
-            int totalChats = chatRepository.countByUserId(userId);
-            int favoriteChats = chatRepository.countByUserIdAndIsFavoriteTrue(userId);
-            int protectedChats = chatRepository.countByUserIdAndIsProtectedTrue(userId);
+            UserStats userStats = userStatsService.getStats(userId);
             
             Map<String, Object> stats = new HashMap<>();
-            stats.put("totalChats", totalChats);
-            stats.put("favoriteChats", favoriteChats);
-            stats.put("protectedChats", protectedChats);
+            stats.put("totalChats", userStats.getChatCount());
+            stats.put("favoriteChats", userStats.getFavoriteCount());
+            stats.put("protectedChats", userStats.getProtectedCount());
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -200,19 +209,13 @@ public class HistoryController {
     @Operation(summary = "获取搜索建议", description = "根据查询关键词获取搜索建议")
     @GetMapping("/search-suggestions")
     public ResponseEntity<Map<String, Object>> getSearchSuggestions(
-            @RequestParam String query) {
+            @RequestParam String query,
+            @CurrentUser Long userId) {
         try {
             log.info("获取搜索建议: query={}", query);
             
-            Long userId = getCurrentUserId();
-            
-            // 获取相关的对话标题作为建议
-            List<Chat> suggestionChats = chatRepository.findTop5ByUserIdAndTitleContainingIgnoreCase(userId, query);
-            
-            List<String> suggestions = new ArrayList<>();
-            for (Chat chat : suggestionChats) {
-                suggestions.add(chat.getTitle());
-            }
+            // 从内存中的标题索引获取建议，不访问数据库
+            List<String> suggestions = titleSuggestionService.suggest(userId, query, 5);
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -229,14 +232,65 @@ public class HistoryController {
         }
     }
 
+    @Operation(summary = "检索消息", description = "在当前用户的全部对话中全文检索消息，按相关度排序并返回高亮片段")
+    @GetMapping("/search-messages")
+    public ResponseEntity<Map<String, Object>> searchMessages(
+            @RequestParam String query,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size,
+            @CurrentUser Long userId) {
+        try {
+            log.info("检索消息: userId={}, query={}, page={}, size={}", userId, query, page, size);
+            
+            ChatDTO.MessageSearchResult result = messageSearchService.search(userId, query, page, size);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("results", result.getHits());
+            response.put("total", result.getTotal());
+            response.put("page", page);
+            response.put("size", size);
+            response.put("tookMs", result.getTookMs());
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (BusinessException e) {
+            log.error("检索消息业务异常: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(createErrorResponse(e.getMessage()));
+        } catch (Exception e) {
+            log.error("检索消息系统异常: ", e);
+            return ResponseEntity.internalServerError().body(createErrorResponse("检索消息失败"));
+        }
+    }
+
+    @Operation(summary = "重建检索索引", description = "从数据库重建当前用户的消息检索索引")
+    @PostMapping("/search-messages/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildSearchIndex(@CurrentUser Long userId) {
+        try {
+            log.info("重建消息检索索引: userId={}", userId);
+            
+            int indexedMessages = messageSearchService.rebuild(userId);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("indexedMessages", indexedMessages);
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (Exception e) {
+            log.error("重建消息检索索引失败: ", e);
+            return ResponseEntity.internalServerError().body(createErrorResponse("重建检索索引失败"));
+        }
+    }
+
     @Operation(summary = "批量操作对话", description = "对多个对话进行批量操作")
     @PostMapping("/batch-operation")
     public ResponseEntity<Map<String, Object>> batchOperation(
-            @RequestBody Map<String, Object> request) {
+            @RequestBody Map<String, Object> request,
+            @CurrentUser Long userId) {
         try {
             log.info("批量操作对话: {}", request);
             
-            Long userId = getCurrentUserId();
             String operation = (String) request.get("operation");
             @SuppressWarnings("unchecked")
             List<Long> chatIds = (List<Long>) request.get("chatIds");
@@ -257,12 +311,10 @@ public class HistoryController {
                             chatService.deleteChat(chatId, userId);
                             break;
                         case "favorite":
-                            chat.setIsFavorite(!chat.getIsFavorite());
-                            chatRepository.save(chat);
+                            chatService.toggleFavorite(chatId, userId);
                             break;
                         case "protect":
-                            chat.setIsProtected(!chat.getIsProtected());
-                            chatRepository.save(chat);
+                            chatService.toggleProtection(chatId, userId);
                             break;
                         default:
                             throw new BusinessException("不支持的操作: " + operation);
@@ -305,24 +357,6 @@ public class HistoryController {
         return ResponseEntity.ok(response);
     }
 
-    // 辅助方法：获取当前用户ID
-    private Long getCurrentUserId() {
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        if (authentication == null || !authentication.isAuthenticated()) {
-            throw new BusinessException("用户未登录");
-        }
-        
-        String principal = authentication.getName();
-        log.debug("当前认证主体: {}", principal);
-        
-        // 首先尝试通过邮箱查找用户，如果失败再尝试用户名
-        User user = userRepository.findByEmail(principal)
-            .orElseGet(() -> userRepository.findByUsername(principal)
-                .orElseThrow(() -> new BusinessException("用户不存在: " + principal)));
-        
-        return user.getId();
-    }
-
     // 辅助方法：创建错误响应
     private Map<String, Object> createErrorResponse(String message) {
         Map<String, Object> response = new HashMap<>();
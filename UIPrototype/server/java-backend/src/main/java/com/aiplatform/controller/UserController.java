@@ -5,13 +5,18 @@ import com.aiplatform.entity.AdminMessage;
 import com.aiplatform.entity.Chat;
 import com.aiplatform.entity.Message;
 import com.aiplatform.entity.User;
+import com.aiplatform.entity.UserStats;
 import com.aiplatform.repository.AdminMessageRepository;
 import com.aiplatform.repository.SupportChatRepository;
 import com.aiplatform.entity.SupportChat;
-import com.aiplatform.repository.ChatRepository;
-import com.aiplatform.repository.MessageRepository;
 import com.aiplatform.repository.UserRepository;
+import com.aiplatform.security.AuthenticatedUser;
+import com.aiplatform.security.CurrentUser;
 import com.aiplatform.security.JwtTokenProvider;
+import com.aiplatform.security.PrincipalCache;
+import com.aiplatform.service.SupportInboxService;
+import com.aiplatform.service.SupportPushService;
+import com.aiplatform.service.UserStatsService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
@@ -20,11 +25,11 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
@@ -42,23 +47,22 @@ import java.util.Optional;
 public class UserController {
 
     private final UserRepository userRepository;
-    private final ChatRepository chatRepository;
-    private final MessageRepository messageRepository;
     private final PasswordEncoder passwordEncoder;
     private final JwtTokenProvider jwtTokenProvider;
     private final AdminMessageRepository adminMessageRepository;
     private final SupportChatRepository supportChatRepository;
+    private final PrincipalCache principalCache;
+    private final UserStatsService userStatsService;
+    private final SupportInboxService supportInboxService;
+    private final SupportPushService supportPushService;
 
     // 获取用户资料
     @Operation(summary = "获取用户资料", description = "获取当前用户的个人资料")
     @GetMapping("/profile")
-    public ResponseEntity<Map<String, Object>> getUserProfile() {
+    public ResponseEntity<Map<String, Object>> getUserProfile(@CurrentUser Long userId) {
         
         try {
-            Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-            String email = auth.getName(); // JWT token中存储的是email
-            
-            User user = userRepository.findByEmail(email)
+            User user = userRepository.findById(userId)
                     .orElseThrow(() -> new RuntimeException("用户不存在"));
             
             Map<String, Object> profile = new HashMap<>();
@@ -81,14 +85,14 @@ public class UserController {
     // 更新用户资料
     @Operation(summary = "更新用户资料", description = "更新当前用户的个人资料")
     @PutMapping("/profile")
-    public ResponseEntity<String> updateUserProfile(@RequestBody Map<String, Object> request) {
+    public ResponseEntity<String> updateUserProfile(
+            @RequestBody Map<String, Object> request,
+            @CurrentUser Long userId) {
         
         try {
-            Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-            String email = auth.getName(); // JWT token中存储的是email
-            
-            User user = userRepository.findByEmail(email)
+            User user = userRepository.findById(userId)
                     .orElseThrow(() -> new RuntimeException("用户不存在"));
+            String email = user.getEmail();
             
             // 只允许更新部分字段
             if (request.containsKey("email")) {
@@ -99,6 +103,7 @@ public class UserController {
             }
             
             userRepository.save(user);
+            principalCache.evict(email);
             
             log.info("用户 {} 更新了资料", email);
             return ResponseEntity.ok("资料更新成功");
@@ -111,22 +116,18 @@ public class UserController {
 
     // 获取用户使用统计
     @GetMapping("/usage-stats")
-    public ResponseEntity<?> getUsageStats(Authentication authentication) {
+    public ResponseEntity<?> getUsageStats(@CurrentUser Long userId) {
         try {
-            String email = authentication.getName();
-            Optional<User> userOpt = userRepository.findByEmail(email);
+            Optional<User> userOpt = userRepository.findById(userId);
             
             if (userOpt.isEmpty()) {
                 return ResponseEntity.status(404).body("用户不存在");
             }
             
             User user = userOpt.get();
-            Long userId = user.getId();
             
             // 统计数据
-            long totalChats = chatRepository.countByUserId(userId);
-            long totalMessages = messageRepository.countByUserId(userId);
-            long favoriteChats = chatRepository.countByUserIdAndIsFavoriteTrue(userId);
+            UserStats stats = userStatsService.getStats(userId);
             
             // 计算使用天数 - 使用简单的计算方式
             long usageDays = 1; // 默认至少1天
@@ -136,9 +137,9 @@ public class UserController {
             
             // 创建统计数据对象并返回Map
             return ResponseEntity.ok(Map.of(
-                "totalChats", totalChats,
-                "totalMessages", totalMessages,
-                "favoriteChats", favoriteChats,
+                "totalChats", stats.getChatCount(),
+                "totalMessages", stats.getMessageCount(),
+                "favoriteChats", stats.getFavoriteCount(),
                 "usageDays", usageDays
             ));
         } catch (Exception e) {
@@ -148,10 +149,9 @@ public class UserController {
 
     // 获取用户权限信息
     @GetMapping("/permissions")
-    public ResponseEntity<?> getPermissions(Authentication authentication) {
+    public ResponseEntity<?> getPermissions(@CurrentUser Long userId) {
         try {
-            String email = authentication.getName();
-            Optional<User> userOpt = userRepository.findByEmail(email);
+            Optional<User> userOpt = userRepository.findById(userId);
             
             if (userOpt.isEmpty()) {
                 return ResponseEntity.status(404).body("用户不存在");
@@ -177,21 +177,17 @@ public class UserController {
     @GetMapping("/messages")
     public ResponseEntity<Map<String, Object>> getUserMessages(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(defaultValue = "20") int size,
+            @CurrentUser AuthenticatedUser currentUser) {
         
         try {
-            // 获取当前用户
-            Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-            String email = auth.getName(); // JWT token中存储的是email
-            
-            User user = userRepository.findByEmail(email)
-                    .orElseThrow(() -> new RuntimeException("用户不存在"));
+            String email = currentUser.getEmail();
             
             log.info("获取用户 {} 的消息列表", email);
             
             Pageable pageable = PageRequest.of(page, size, Sort.by("createdAt").descending());
             Page<AdminMessage> messagesPage = adminMessageRepository.findByToUserIdOrderByCreatedAtDesc(
-                    user.getId(), pageable);
+                    currentUser.getId(), pageable);
             
             // 构建包含发信人信息的响应数据
             List<Map<String, Object>> messageList = messagesPage.getContent().stream()
@@ -245,21 +241,18 @@ public class UserController {
      */
     @Operation(summary = "标记消息已读", description = "将指定消息标记为已读")
     @PatchMapping("/messages/{messageId}/read")
-    public ResponseEntity<String> markMessageAsRead(@PathVariable Long messageId) {
+    public ResponseEntity<String> markMessageAsRead(
+            @PathVariable Long messageId,
+            @CurrentUser AuthenticatedUser currentUser) {
         
         try {
-            // 获取当前用户
-            Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-            String email = auth.getName(); // JWT token中存储的是email
-            
-            User user = userRepository.findByEmail(email)
-                    .orElseThrow(() -> new RuntimeException("用户不存在"));
+            String email = currentUser.getEmail();
             
             AdminMessage message = adminMessageRepository.findById(messageId)
                     .orElseThrow(() -> new RuntimeException("消息不存在"));
             
             // 检查消息是否属于当前用户
-            if (!message.getToUserId().equals(user.getId())) {
+            if (!message.getToUserId().equals(currentUser.getId())) {
                 return ResponseEntity.status(403).body("无权限访问此消息");
             }
             
@@ -280,21 +273,18 @@ public class UserController {
      */
     @Operation(summary = "删除消息", description = "删除指定的消息")
     @DeleteMapping("/messages/{messageId}")
-    public ResponseEntity<String> deleteMessage(@PathVariable Long messageId) {
+    public ResponseEntity<String> deleteMessage(
+            @PathVariable Long messageId,
+            @CurrentUser AuthenticatedUser currentUser) {
         
         try {
-            // 获取当前用户
-            Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-            String email = auth.getName(); // JWT token中存储的是email
-            
-            User user = userRepository.findByEmail(email)
-                    .orElseThrow(() -> new RuntimeException("用户不存在"));
+            String email = currentUser.getEmail();
             
             AdminMessage message = adminMessageRepository.findById(messageId)
                     .orElseThrow(() -> new RuntimeException("消息不存在"));
             
             // 检查消息是否属于当前用户
-            if (!message.getToUserId().equals(user.getId())) {
+            if (!message.getToUserId().equals(currentUser.getId())) {
                 return ResponseEntity.status(403).body("无权限删除此消息");
             }
             
@@ -314,20 +304,17 @@ public class UserController {
      */
     @Operation(summary = "获取客服对话", description = "获取当前用户与客服的对话记录")
     @GetMapping("/support/chat")
-    public ResponseEntity<List<Map<String, Object>>> getSupportChat() {
+    public ResponseEntity<List<Map<String, Object>>> getSupportChat(@CurrentUser AuthenticatedUser currentUser) {
         
         try {
-            // 获取当前用户
-            Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-            String email = auth.getName(); // JWT token中存储的是email
-            
-            User user = userRepository.findByEmail(email)
-                    .orElseThrow(() -> new RuntimeException("用户不存在"));
+            String email = currentUser.getEmail();
             
             log.info("获取用户 {} 的客服对话记录", email);
             
             // 获取用户的所有客服对话记录
-            List<SupportChat> supportChats = supportChatRepository.findByUserIdOrderByCreatedAtAsc(user.getId());
+            List<SupportChat> supportChats = supportChatRepository.findByUserIdOrderByCreatedAtAsc(currentUser.getId());
+            Long customerMark = supportInboxService.lastReadId(currentUser.getId(), SupportChat.SenderType.USER);
+            Long supportMark = supportInboxService.lastReadId(currentUser.getId(), SupportChat.SenderType.SUPPORT);
             
             // 构建响应数据，包含发送者信息
             List<Map<String, Object>> chatList = supportChats.stream()
@@ -336,7 +323,7 @@ public class UserController {
                         chatData.put("id", chat.getId());
                         chatData.put("content", chat.getContent());
                         chatData.put("senderType", chat.getSenderType().name());
-                        chatData.put("isRead", chat.getIsRead());
+                        chatData.put("isRead", SupportInboxService.isRead(chat, customerMark, supportMark));
                         chatData.put("createdAt", chat.getCreatedAt());
                         chatData.put("userId", chat.getUserId());
                         chatData.put("supportId", chat.getSupportId());
@@ -354,10 +341,10 @@ public class UserController {
                             });
                         } else if (chat.isFromUser()) {
                             Map<String, Object> fromUserData = new HashMap<>();
-                            fromUserData.put("id", user.getId());
-                            fromUserData.put("username", user.getUsername());
-                            fromUserData.put("email", user.getEmail());
-                            fromUserData.put("role", user.getRole().name());
+                            fromUserData.put("id", currentUser.getId());
+                            fromUserData.put("username", currentUser.getDisplayName());
+                            fromUserData.put("email", currentUser.getEmail());
+                            fromUserData.put("role", currentUser.getRole().name());
                             chatData.put("fromUser", fromUserData);
                         }
                         
@@ -373,20 +360,59 @@ public class UserController {
         }
     }
 
+    /**
+     * 标记客服对话已读
+     */
+    @Operation(summary = "标记客服对话已读", description = "把当前用户的已读水位推进到指定消息，未指定时推进到最新一条")
+    @PostMapping("/support/chat/read")
+    public ResponseEntity<Map<String, Object>> markSupportChatRead(
+            @RequestBody(required = false) Map<String, Object> request,
+            @CurrentUser AuthenticatedUser currentUser) {
+        
+        try {
+            Long latestId = supportInboxService.latestMessageId(currentUser.getId());
+            if (latestId == null) {
+                return ResponseEntity.ok(Map.of("success", true, "advanced", false));
+            }
+            
+            // 水位不超过对话中最新的一条消息
+            Object messageIdObj = request != null ? request.get("messageId") : null;
+            Long messageId = messageIdObj instanceof Number number ? Math.min(number.longValue(), latestId) : latestId;
+            
+            boolean advanced = supportInboxService.markRead(currentUser.getId(), SupportChat.SenderType.USER, messageId);
+            if (advanced) {
+                supportPushService.onReadMarkChanged(currentUser.getId(), SupportChat.SenderType.USER);
+            }
+            return ResponseEntity.ok(Map.of("success", true, "advanced", advanced));
+            
+        } catch (Exception e) {
+            log.error("标记客服对话已读失败: {}", e.getMessage());
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * 订阅客服对话推送
+     */
+    @Operation(summary = "订阅客服对话推送", description = "SSE推送新的客服消息与未读数量；重连时通过 Last-Event-ID 补发断线期间的消息")
+    @GetMapping(value = "/support/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamSupportChat(
+            @CurrentUser Long userId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return supportPushService.subscribeCustomer(userId, lastEventId);
+    }
+
     /**
      * 发送消息给客服
      */
     @Operation(summary = "发送消息给客服", description = "用户向客服发送消息")
     @PostMapping("/support/message")
-    public ResponseEntity<String> sendToSupport(@RequestBody Map<String, Object> request) {
+    public ResponseEntity<String> sendToSupport(
+            @RequestBody Map<String, Object> request,
+            @CurrentUser AuthenticatedUser currentUser) {
         
         try {
-            // 获取当前用户
-            Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-            String email = auth.getName(); // JWT token中存储的是email
-            
-            User user = userRepository.findByEmail(email)
-                    .orElseThrow(() -> new RuntimeException("用户不存在"));
+            String email = currentUser.getEmail();
             
             String content = (String) request.get("content");
             if (content == null || content.trim().isEmpty()) {
@@ -412,13 +438,14 @@ public class UserController {
             
             // 创建客服对话记录
             SupportChat supportChat = new SupportChat();
-            supportChat.setUserId(user.getId());
+            supportChat.setUserId(currentUser.getId());
             supportChat.setSupportId(supportId);
             supportChat.setContent(content);
             supportChat.setSenderType(SupportChat.SenderType.USER);
             supportChat.setIsRead(false);
             
             supportChatRepository.save(supportChat);
+            supportPushService.onMessageSaved(supportChat);
             
             log.info("用户消息已保存到客服对话，等待客服回复");
             
@@ -0,0 +1,111 @@
+package com.aiplatform.dto;
+
+import com.aiplatform.entity.Chat;
+import com.aiplatform.entity.Message;
+import com.aiplatform.exception.BusinessException;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class ChatDTO {
+
+    /**
+     * 一轮对话第一阶段（保存用户消息）的结果，供后续在事务外生成回复；
+     * userMessage 在消息写入后完成（组提交模式下可能晚于事务提交）
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PromptResult {
+        private CompletableFuture<Message> userMessage;
+        private Chat.AiType aiType;
+        private boolean responseCacheEnabled;
+    }
+
+    /**
+     * 一页按时间正序排列的消息；olderCursor / newerCursor 分别作为下一次请求的 before / after 参数
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class MessagePage {
+        private List<Message> messages;
+        private boolean hasMore;
+        private String olderCursor;
+        private String newerCursor;
+    }
+
+    /**
+     * 消息分页游标：(createdAt, id) 编码为不透明字符串
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class MessageCursor {
+        private LocalDateTime createdAt;
+        private Long id;
+
+        public static String encode(Message message) {
+            String raw = message.getCreatedAt() + "|" + message.getId();
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public static MessageCursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = raw.lastIndexOf('|');
+                return new MessageCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                        Long.parseLong(raw.substring(separator + 1)));
+            } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+                throw new BusinessException("无效的分页游标");
+            }
+        }
+    }
+
+    /**
+     * 批量清理结果
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PurgeResult {
+        private int deletedChats;
+        private long deletedMessages;
+        private long elapsedMs;
+    }
+
+    /**
+     * 消息检索命中；highlights 为 snippet 中各命中区间 [start, end)
+     */
+    @Data
+    @NoArgsConstructor
+    public static class MessageSearchHit {
+        private Long messageId;
+        private Long chatId;
+        private String chatTitle;
+        private String role;
+        private LocalDateTime createdAt;
+        private double score;
+        private String snippet;
+        private List<int[]> highlights;
+    }
+
+    /**
+     * 消息检索结果
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class MessageSearchResult {
+        private List<MessageSearchHit> hits;
+        private int total;
+        private long tookMs;
+    }
+}
@@ -0,0 +1,93 @@
+package com.aiplatform.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public class SupportDTO {
+
+    /**
+     * 客服工作台中的一个客户对话：客户信息、最后一条消息预览和未读数量
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class InboxItem {
+        private Long id;
+        private Long customerId;
+        private String customerName;
+        private String customerEmail;
+        private String lastMessage;
+        private LocalDateTime updatedAt;
+        private long unreadCount;
+    }
+
+    /**
+     * 一页客户对话，按最后消息时间倒序
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class InboxPage {
+        private List<InboxItem> customers;
+        private int page;
+        private int size;
+        /** 客户总数，只在第一页返回 */
+        private Long total;
+        private boolean hasMore;
+    }
+
+    /**
+     * 客服对话中的一条消息
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SupportMessage {
+        private Long id;
+        private String content;
+        private Boolean isFromCustomer;
+        private String senderType;
+        private LocalDateTime createdAt;
+        private Boolean isRead;
+    }
+
+    /**
+     * 推送给已连接客户端的未读数量：客服端按客户分别推送，客户端只有自己的对话
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class UnreadUpdate {
+        private Long customerId;
+        private long unreadCount;
+    }
+
+    /**
+     * 推送的新消息
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class MessageEvent {
+        private Long customerId;
+        private Long supportId;
+        private SupportMessage message;
+    }
+
+    /**
+     * 一页按时间正序排列的对话消息；olderCursor 作为下一次请求的 beforeId 参数
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class TranscriptPage {
+        private Long customerId;
+        private List<SupportMessage> messages;
+        private boolean hasMore;
+        private Long olderCursor;
+    }
+}
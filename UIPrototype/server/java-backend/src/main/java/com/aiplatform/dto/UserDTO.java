@@ -147,6 +147,9 @@ public class UserDTO {
         private long customerServiceUsers;
         private long newUsersThisMonth;
         private long lockedUsers;
+        // 统计快照的生成时间与距今秒数
+        private LocalDateTime generatedAt;
+        private long ageSeconds;
     }
 
     @Data
@@ -16,7 +16,7 @@ import java.time.LocalDateTime;
 public class Chat {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @PooledId(table = "chats")
     private Long id;
 
     @Column(name = "user_id", nullable = false)
@@ -35,6 +35,15 @@ public class Chat {
     @Column(name = "is_protected", nullable = false)
     private Boolean isProtected = false;
 
+    // 是否允许复用相同提示词的缓存回复；旧数据为空时视为允许
+    @Column(name = "response_cache_enabled")
+    private Boolean responseCacheEnabled = true;
+
+    // 已被批量清理选中、正在删除：不再接受新消息和保护状态变更。只由清理语句写入，旧数据为空时视为否
+    @Column(name = "purging", insertable = false, updatable = false)
+    @JsonIgnore
+    private Boolean purging;
+
     @Column(name = "message_count", nullable = false)
     private Integer messageCount = 0;
 
@@ -9,14 +9,17 @@ import lombok.AllArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+        // 消息历史按 (created_at, id) 游标分页
+        @Index(name = "idx_messages_chat_created_id", columnList = "chat_id, created_at, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Message {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @PooledId(table = "messages", allocationSize = 100)
     private Long id;
 
     @Column(name = "chat_id", nullable = false)
@@ -0,0 +1,31 @@
+package com.aiplatform.entity;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 按号段预分配主键（hi/lo）：ID 在插入前确定，Hibernate 可以把同一次 flush 中的多条插入合并为一个 JDBC 批次，
+ * 消息组提交也依赖它在调用方事务中预先分配ID、由写入线程按批插入。
+ * 逐条保存的路径不会合并：一轮对话的提示词必须在生成回复之前提交，提示词和回复分属两个事务。
+ *
+ * 多个实例各自持有不同号段，ID 唯一但不按插入或提交顺序递增；依赖 id 顺序的表（如 support_chats）不要使用。
+ */
+@IdGeneratorType(PooledIdGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface PooledId {
+
+    /**
+     * 实体对应的表名，同时作为号段表中的序列名；首次分配时以该表的 MAX(id) 为起点
+     */
+    String table();
+
+    /**
+     * 每次从号段表取出的ID数量
+     */
+    int allocationSize() default 50;
+}
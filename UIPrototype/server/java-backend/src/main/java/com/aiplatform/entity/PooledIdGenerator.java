@@ -0,0 +1,101 @@
+package com.aiplatform.entity;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.HibernateException;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.factory.spi.CustomIdGeneratorCreationContext;
+import org.hibernate.jdbc.AbstractReturningWork;
+
+import java.lang.reflect.Member;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+
+/**
+ * {@link PooledId} 的主键生成器
+ *
+ * 每次在独立事务中把 id_sequences 中的 next_val 加上 allocationSize，取得一段ID后在内存中依次分配；
+ * 多个实例各自取号段，互不重复。序列行不存在时按表中现有的 MAX(id) 初始化，兼容原先自增生成的数据。
+ */
+@Slf4j
+public class PooledIdGenerator implements IdentifierGenerator {
+
+    private final String table;
+    private final int allocationSize;
+    private long next;
+    private long limit;
+
+    public PooledIdGenerator(PooledId config, Member idMember, CustomIdGeneratorCreationContext context) {
+        this.table = config.table();
+        this.allocationSize = Math.max(1, config.allocationSize());
+    }
+
+    @Override
+    public synchronized Object generate(SharedSessionContractImplementor session, Object entity) {
+        if (next >= limit) {
+            long start = session.getTransactionCoordinator()
+                    .createIsolationDelegate()
+                    .delegateWork(new AllocateWork(), true);
+            next = start;
+            limit = start + allocationSize;
+            log.debug("分配主键号段: table={}, range=[{}, {})", table, next, limit);
+        }
+        return next++;
+    }
+
+    /**
+     * 锁定序列行并前移一个号段，返回号段起点
+     */
+    private class AllocateWork extends AbstractReturningWork<Long> {
+
+        @Override
+        public Long execute(Connection connection) throws SQLException {
+            Long current = selectForUpdate(connection);
+            if (current == null) {
+                insertSeed(connection);
+                current = selectForUpdate(connection);
+                if (current == null) {
+                    throw new HibernateException("无法初始化主键序列: " + table);
+                }
+            }
+            try (PreparedStatement update = connection.prepareStatement(
+                    "UPDATE id_sequences SET next_val = ? WHERE name = ?")) {
+                update.setLong(1, current + allocationSize);
+                update.setString(2, table);
+                update.executeUpdate();
+            }
+            return current;
+        }
+
+        private Long selectForUpdate(Connection connection) throws SQLException {
+            try (PreparedStatement select = connection.prepareStatement(
+                    "SELECT next_val FROM id_sequences WHERE name = ? FOR UPDATE")) {
+                select.setString(1, table);
+                try (ResultSet resultSet = select.executeQuery()) {
+                    return resultSet.next() ? resultSet.getLong(1) : null;
+                }
+            }
+        }
+
+        private void insertSeed(Connection connection) throws SQLException {
+            long seed;
+            try (PreparedStatement max = connection.prepareStatement("SELECT COALESCE(MAX(id), 0) + 1 FROM " + table);
+                 ResultSet resultSet = max.executeQuery()) {
+                resultSet.next();
+                seed = resultSet.getLong(1);
+            }
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO id_sequences (name, next_val) VALUES (?, ?)")) {
+                insert.setString(1, table);
+                insert.setLong(2, seed);
+                insert.executeUpdate();
+            } catch (SQLIntegrityConstraintViolationException e) {
+                // 其他实例已同时完成初始化，重新读取即可；其他错误（表不存在、无权限等）直接抛出
+                log.debug("主键序列已由其他实例初始化: table={}", table);
+            }
+        }
+    }
+}
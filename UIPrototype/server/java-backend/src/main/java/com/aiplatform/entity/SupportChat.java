@@ -8,12 +8,16 @@ import lombok.AllArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "support_chats")
+@Table(name = "support_chats", indexes = {
+        // 客服工作台按客户聚合、按 id 倒序分页读取对话
+        @Index(name = "idx_support_chats_user_id", columnList = "user_id, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class SupportChat extends BaseEntity {
 
+    // 已读水位、客服工作台排序和 Last-Event-ID 补发依赖 id 按插入顺序递增，使用自增主键而不是号段
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
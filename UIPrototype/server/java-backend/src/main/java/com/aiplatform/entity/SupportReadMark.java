@@ -0,0 +1,38 @@
+package com.aiplatform.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 客服对话的已读水位：某一方（客户或客服）已读到的最大消息ID，对方发送的、ID 不超过水位的消息视为已读
+ */
+@Entity
+@Table(name = "support_read_marks", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_support_read_marks_customer_reader", columnNames = {"customer_id", "reader_type"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SupportReadMark {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "customer_id", nullable = false)
+    private Long customerId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "reader_type", nullable = false)
+    private SupportChat.SenderType readerType;
+
+    @Column(name = "last_read_id", nullable = false)
+    private Long lastReadId = 0L;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
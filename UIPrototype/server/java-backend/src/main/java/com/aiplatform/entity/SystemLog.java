@@ -16,7 +16,7 @@ import java.time.LocalDateTime;
 public class SystemLog {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @PooledId(table = "system_logs", allocationSize = 100)
     private Long id;
 
     @Column(name = "user_id")
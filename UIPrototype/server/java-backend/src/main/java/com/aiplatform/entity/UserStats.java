@@ -0,0 +1,45 @@
+package com.aiplatform.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 用户数据统计，由聊天/消息写入路径增量维护，定期与明细表校准
+ */
+@Entity
+@Table(name = "user_stats")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserStats {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "chat_count", nullable = false)
+    private Long chatCount = 0L;
+
+    @Column(name = "message_count", nullable = false)
+    private Long messageCount = 0L;
+
+    @Column(name = "favorite_count", nullable = false)
+    private Long favoriteCount = 0L;
+
+    @Column(name = "protected_count", nullable = false)
+    private Long protectedCount = 0L;
+
+    // 消息内容的 UTF-8 字节数
+    @Column(name = "content_bytes", nullable = false)
+    private Long contentBytes = 0L;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @Column(name = "reconciled_at")
+    private LocalDateTime reconciledAt;
+}
@@ -1,9 +1,12 @@
 package com.aiplatform.repository;
 
 import com.aiplatform.entity.Chat;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -23,6 +26,27 @@ public interface ChatRepository extends JpaRepository<Chat, Long> {
     // 根据用户ID和聊天ID查找
     Optional<Chat> findByIdAndUserId(Long id, Long userId);
 
+    boolean existsByIdAndUserId(Long id, Long userId);
+
+    // 锁定聊天行，修改保护状态时与批量清理的选中语句串行化
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM Chat c WHERE c.id = :id AND c.userId = :userId")
+    Optional<Chat> findForUpdateByIdAndUserId(@Param("id") Long id, @Param("userId") Long userId);
+
+    // 查询生成回复所需的聊天设置（同时校验归属）
+    @Query("SELECT c.aiType AS aiType, c.responseCacheEnabled AS responseCacheEnabled " +
+           "FROM Chat c WHERE c.id = :id AND c.userId = :userId")
+    Optional<PromptTarget> findPromptTargetByIdAndUserId(@Param("id") Long id, @Param("userId") Long userId);
+
+    // 原子地累加消息计数并刷新最后活动时间，返回受影响行数（0 表示聊天不存在、不属于该用户或正在被批量清理）
+    @Modifying
+    @Query("UPDATE Chat c SET c.messageCount = COALESCE(c.messageCount, 0) + :delta, c.lastActivity = :now, c.updatedAt = :now " +
+           "WHERE c.id = :chatId AND c.userId = :userId AND (c.purging IS NULL OR c.purging = false)")
+    int incrementMessageCount(@Param("chatId") Long chatId,
+                              @Param("userId") Long userId,
+                              @Param("delta") int delta,
+                              @Param("now") LocalDateTime now);
+
     // 查找收藏的聊天
     Page<Chat> findByUserIdAndIsFavoriteTrueOrderByLastActivityDesc(Long userId, Pageable pageable);
 
@@ -76,10 +100,22 @@ public interface ChatRepository extends JpaRepository<Chat, Long> {
     @Query("SELECT c FROM Chat c WHERE c.userId = :userId AND c.isProtected = false AND c.lastActivity < :cutoffDate")
     List<Chat> findChatsToCleanup(@Param("userId") Long userId, @Param("cutoffDate") LocalDateTime cutoffDate);
 
+    @Query("SELECT COUNT(c) FROM Chat c WHERE c.userId = :userId AND c.isProtected = false AND c.lastActivity < :cutoffDate")
+    long countChatsToCleanup(@Param("userId") Long userId, @Param("cutoffDate") LocalDateTime cutoffDate);
+
     // 查找活跃聊天（最近有消息）
     @Query("SELECT c FROM Chat c WHERE c.userId = :userId AND c.lastActivity > :since ORDER BY c.lastActivity DESC")
     List<Chat> findActiveChats(@Param("userId") Long userId, @Param("since") LocalDateTime since);
 
     // 删除用户的聊天
     void deleteByUserId(Long userId);
-} 
\ No newline at end of file
+
+    /**
+     * 生成回复所需的聊天设置
+     */
+    interface PromptTarget {
+        Chat.AiType getAiType();
+
+        Boolean getResponseCacheEnabled();
+    }
+}
@@ -19,6 +19,28 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     
     List<Message> findByChatIdOrderByCreatedAtAsc(Long chatId);
 
+    // 游标分页：最新的一页（倒序）
+    @Query("SELECT m FROM Message m WHERE m.chatId = :chatId ORDER BY m.createdAt DESC, m.id DESC")
+    List<Message> findLatestPage(@Param("chatId") Long chatId, Pageable pageable);
+
+    // 游标分页：早于游标位置的一页（倒序）
+    @Query("SELECT m FROM Message m WHERE m.chatId = :chatId AND m.createdAt <= :createdAt " +
+           "AND (m.createdAt < :createdAt OR m.id < :id) " +
+           "ORDER BY m.createdAt DESC, m.id DESC")
+    List<Message> findPageBefore(@Param("chatId") Long chatId,
+                                 @Param("createdAt") LocalDateTime createdAt,
+                                 @Param("id") Long id,
+                                 Pageable pageable);
+
+    // 游标分页：晚于游标位置的一页（正序）
+    @Query("SELECT m FROM Message m WHERE m.chatId = :chatId AND m.createdAt >= :createdAt " +
+           "AND (m.createdAt > :createdAt OR m.id > :id) " +
+           "ORDER BY m.createdAt ASC, m.id ASC")
+    List<Message> findPageAfter(@Param("chatId") Long chatId,
+                                @Param("createdAt") LocalDateTime createdAt,
+                                @Param("id") Long id,
+                                Pageable pageable);
+
     // 根据聊天ID和角色查找消息
     List<Message> findByChatIdAndRoleOrderByCreatedAtAsc(Long chatId, Message.MessageRole role);
 
@@ -39,6 +39,21 @@ public interface SupportChatRepository extends JpaRepository<SupportChat, Long>
     @Query("SELECT sc FROM SupportChat sc WHERE sc.userId = :userId ORDER BY sc.createdAt DESC")
     Page<SupportChat> findByUserIdOrderByCreatedAtDesc(@Param("userId") Long userId, Pageable pageable);
 
+    // 按 id 倒序分页读取客户对话，beforeId 为空时从最新一条开始
+    @Query("SELECT sc FROM SupportChat sc WHERE sc.userId = :userId AND (:beforeId IS NULL OR sc.id < :beforeId) ORDER BY sc.id DESC")
+    List<SupportChat> findPageBefore(@Param("userId") Long userId, @Param("beforeId") Long beforeId, Pageable pageable);
+
+    // 断线重连时补发 afterId 之后的消息
+    List<SupportChat> findByUserIdAndIdGreaterThanOrderByIdAsc(Long userId, Long afterId, Pageable pageable);
+
+    List<SupportChat> findByIdGreaterThanOrderByIdAsc(Long afterId, Pageable pageable);
+
+    @Query("SELECT MAX(sc.id) FROM SupportChat sc WHERE sc.userId = :userId")
+    Long findMaxIdByUserId(@Param("userId") Long userId);
+
+    @Query("SELECT MAX(sc.id) FROM SupportChat sc")
+    Long findMaxId();
+
     // 获取客户最后一条消息
     @Query("SELECT sc FROM SupportChat sc WHERE sc.userId = :userId ORDER BY sc.createdAt DESC LIMIT 1")
     SupportChat findLatestMessageByUserId(@Param("userId") Long userId);
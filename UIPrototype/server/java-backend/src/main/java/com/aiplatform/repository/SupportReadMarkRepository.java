@@ -0,0 +1,27 @@
+package com.aiplatform.repository;
+
+import com.aiplatform.entity.SupportChat;
+import com.aiplatform.entity.SupportReadMark;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface SupportReadMarkRepository extends JpaRepository<SupportReadMark, Long> {
+
+    Optional<SupportReadMark> findByCustomerIdAndReaderType(Long customerId, SupportChat.SenderType readerType);
+
+    // 水位只前进不后退；行不存在或水位已不低于 messageId 时返回 0
+    @Modifying
+    @Query("UPDATE SupportReadMark m SET m.lastReadId = :messageId, m.updatedAt = :now " +
+           "WHERE m.customerId = :customerId AND m.readerType = :readerType AND m.lastReadId < :messageId")
+    int advance(@Param("customerId") Long customerId,
+                @Param("readerType") SupportChat.SenderType readerType,
+                @Param("messageId") Long messageId,
+                @Param("now") LocalDateTime now);
+}
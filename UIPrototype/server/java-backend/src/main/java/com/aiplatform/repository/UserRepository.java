@@ -112,4 +112,12 @@ public interface UserRepository extends JpaRepository<User, Long>, JpaSpecificat
      * 统计指定时间之后创建的用户数量
      */
     long countByCreatedAtAfter(LocalDateTime date);
-} 
\ No newline at end of file
+
+    /**
+     * 按角色和状态分组统计用户数量及指定时间之后创建的用户数量
+     * 每行依次为：角色、状态、用户数、新用户数
+     */
+    @Query("SELECT u.role, u.status, COUNT(u), SUM(CASE WHEN u.createdAt >= :since THEN 1 ELSE 0 END) " +
+           "FROM User u GROUP BY u.role, u.status")
+    List<Object[]> countGroupByRoleAndStatus(@Param("since") LocalDateTime since);
+}
@@ -1,6 +1,7 @@
 package com.aiplatform.repository;
 
 import com.aiplatform.entity.UserSettings;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -35,4 +36,13 @@ public interface UserSettingsRepository extends JpaRepository<UserSettings, Long
     // 查找需要清理的用户设置（启用自动清理且到了清理时间）
     @Query("SELECT us FROM UserSettings us WHERE us.autoCleanupEnabled = true AND us.cleanupFrequency = :frequency")
     List<UserSettings> findForCleanup(@Param("frequency") UserSettings.CleanupFrequency frequency);
-} 
\ No newline at end of file
+
+    // 按 id 分批查找需要清理的用户设置，userId 按 shardCount 取模只处理本分片
+    @Query("SELECT us FROM UserSettings us WHERE us.autoCleanupEnabled = true AND us.cleanupFrequency = :frequency " +
+           "AND us.id > :afterId AND MOD(us.userId, :shardCount) = :shardIndex ORDER BY us.id")
+    List<UserSettings> findForCleanup(@Param("frequency") UserSettings.CleanupFrequency frequency,
+                                      @Param("afterId") Long afterId,
+                                      @Param("shardCount") Long shardCount,
+                                      @Param("shardIndex") Long shardIndex,
+                                      Pageable pageable);
+}
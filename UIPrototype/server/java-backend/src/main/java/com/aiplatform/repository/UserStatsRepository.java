@@ -0,0 +1,41 @@
+package com.aiplatform.repository;
+
+import com.aiplatform.entity.UserStats;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface UserStatsRepository extends JpaRepository<UserStats, Long> {
+
+    // 按增量累加统计；行不存在时返回 0，由首次读取或校准任务完整计算
+    @Modifying
+    @Query("UPDATE UserStats s SET s.chatCount = s.chatCount + :chats, s.messageCount = s.messageCount + :messages, " +
+           "s.favoriteCount = s.favoriteCount + :favorites, s.protectedCount = s.protectedCount + :protectedChats, " +
+           "s.contentBytes = s.contentBytes + :bytes, s.updatedAt = :now WHERE s.userId = :userId")
+    int applyDelta(@Param("userId") Long userId,
+                   @Param("chats") long chats,
+                   @Param("messages") long messages,
+                   @Param("favorites") long favorites,
+                   @Param("protectedChats") long protectedChats,
+                   @Param("bytes") long bytes,
+                   @Param("now") LocalDateTime now);
+
+    // 校准时锁定统计行，与并发的增量更新串行化
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM UserStats s WHERE s.userId = :userId")
+    Optional<UserStats> findForUpdate(@Param("userId") Long userId);
+
+    // 校准任务按 userId 分批遍历
+    @Query("SELECT s.userId FROM UserStats s WHERE s.userId > :afterUserId ORDER BY s.userId")
+    List<Long> findUserIdsAfter(@Param("afterUserId") Long afterUserId, Pageable pageable);
+}
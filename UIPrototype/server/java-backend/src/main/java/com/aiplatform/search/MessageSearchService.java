@@ -0,0 +1,336 @@
+package com.aiplatform.search;
+
+import com.aiplatform.dto.ChatDTO;
+import com.aiplatform.entity.Chat;
+import com.aiplatform.entity.Message;
+import com.aiplatform.exception.BusinessException;
+import com.aiplatform.repository.ChatRepository;
+import com.aiplatform.repository.MessageRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 消息全文检索
+ *
+ * 每个用户一份内存倒排索引，首次查询时从磁盘快照加载并补齐快照之后的新消息，没有快照时从数据库重建。
+ * 消息保存、聊天删除在事务提交后增量更新已加载的索引；脏索引定期写回快照，长时间未使用的索引从内存卸载。
+ * 其他实例写入的消息不会触发本实例的增量更新：已加载的索引距上次补齐超过 refresh-interval-seconds 时，
+ * 查询前按同样的水位从数据库补齐一次；其他实例删除的消息在查询命中时发现并移除。
+ * 消息ID按号段分配，多实例下不按提交顺序递增，因此补齐以快照中最新消息的创建时间为水位，
+ * 向前回退 catch-up-slack-seconds 覆盖提交延迟和实例间时钟偏差，已在索引中的消息跳过。
+ */
+@Service
+@Slf4j
+public class MessageSearchService {
+
+    private static final String USER_MESSAGES_SQL =
+            "SELECT m.id, m.chat_id, m.created_at, m.content FROM messages m JOIN chats c ON c.id = m.chat_id " +
+            "WHERE c.user_id = ? AND m.created_at >= ?";
+
+    private final ChatRepository chatRepository;
+    private final MessageRepository messageRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final Timer queryTimer;
+    private final Map<Long, UserMessageIndex> indexes = new ConcurrentHashMap<>();
+
+    private final Path indexDir;
+    private final int maxLoadedUsers;
+    private final int maxResults;
+    private final int snippetLength;
+    private final long catchUpSlackSeconds;
+    private final long refreshIntervalNanos;
+
+    public MessageSearchService(ChatRepository chatRepository,
+                                MessageRepository messageRepository,
+                                JdbcTemplate jdbcTemplate,
+                                MeterRegistry meterRegistry,
+                                @Value("${app.search.index-dir:data/search-index}") String indexDir,
+                                @Value("${app.search.max-loaded-users:1000}") int maxLoadedUsers,
+                                @Value("${app.search.max-results:200}") int maxResults,
+                                @Value("${app.search.snippet-length:120}") int snippetLength,
+                                @Value("${app.search.catch-up-slack-seconds:600}") long catchUpSlackSeconds,
+                                @Value("${app.search.refresh-interval-seconds:30}") long refreshIntervalSeconds) {
+        this.chatRepository = chatRepository;
+        this.messageRepository = messageRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.indexDir = Paths.get(indexDir);
+        this.maxLoadedUsers = maxLoadedUsers;
+        this.maxResults = maxResults;
+        this.snippetLength = snippetLength;
+        this.catchUpSlackSeconds = catchUpSlackSeconds;
+        this.refreshIntervalNanos = TimeUnit.SECONDS.toNanos(refreshIntervalSeconds);
+        this.queryTimer = Timer.builder("search.query.duration").register(meterRegistry);
+        Gauge.builder("search.index.loaded.users", indexes, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * 在用户的全部聊天中检索消息，按 BM25 得分排序
+     */
+    public ChatDTO.MessageSearchResult search(Long userId, String query, int page, int size) {
+        Set<String> terms = SearchTokenizer.tokenizeForQuery(query).stream()
+                .map(SearchTokenizer.Token::term)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        if (terms.isEmpty()) {
+            throw new BusinessException("搜索关键词不能为空");
+        }
+        int pageSize = Math.max(1, Math.min(size, maxResults));
+        int offset = Math.max(0, page) * pageSize;
+        if (offset >= maxResults) {
+            throw new BusinessException("最多只能查看前 " + maxResults + " 条搜索结果");
+        }
+
+        long startedAt = System.nanoTime();
+        UserMessageIndex index = acquire(userId);
+        UserMessageIndex.Result result = index.search(terms, Math.min(offset + pageSize, maxResults));
+        List<UserMessageIndex.Hit> pageHits = result.hits().subList(Math.min(offset, result.hits().size()),
+                result.hits().size());
+
+        Map<Long, Message> messages = messageRepository.findAllById(
+                        pageHits.stream().map(UserMessageIndex.Hit::messageId).toList()).stream()
+                .collect(Collectors.toMap(Message::getId, Function.identity()));
+        Map<Long, String> chatTitles = chatRepository.findAllById(
+                        pageHits.stream().map(UserMessageIndex.Hit::chatId).distinct().toList()).stream()
+                .filter(chat -> userId.equals(chat.getUserId()))
+                .collect(Collectors.toMap(Chat::getId, Chat::getTitle));
+
+        List<ChatDTO.MessageSearchHit> hits = new ArrayList<>();
+        List<Long> staleIds = new ArrayList<>();
+        for (UserMessageIndex.Hit hit : pageHits) {
+            Message message = messages.get(hit.messageId());
+            if (message == null || !chatTitles.containsKey(hit.chatId())) {
+                // 索引中残留的已删除消息，顺带移除
+                staleIds.add(hit.messageId());
+                continue;
+            }
+            ChatDTO.MessageSearchHit searchHit = new ChatDTO.MessageSearchHit();
+            searchHit.setMessageId(message.getId());
+            searchHit.setChatId(message.getChatId());
+            searchHit.setChatTitle(chatTitles.get(hit.chatId()));
+            searchHit.setRole(message.getRole().name());
+            searchHit.setCreatedAt(message.getCreatedAt());
+            searchHit.setScore(hit.score());
+            applySnippet(searchHit, message.getContent(), terms);
+            hits.add(searchHit);
+        }
+        if (!staleIds.isEmpty()) {
+            index.removeMessages(staleIds);
+        }
+
+        long tookNanos = System.nanoTime() - startedAt;
+        queryTimer.record(tookNanos, TimeUnit.NANOSECONDS);
+        return new ChatDTO.MessageSearchResult(hits, result.total() - staleIds.size(), tookNanos / 1_000_000);
+    }
+
+    /**
+     * 消息保存后增量索引；处于事务中时在提交后执行
+     */
+    public void onMessageSaved(Long userId, Message message) {
+        afterCommit(() -> {
+            UserMessageIndex index = indexes.get(userId);
+            // 未加载的索引不需要处理，加载时会从数据库补齐
+            if (index != null) {
+                index.add(message.getId(), message.getChatId(), message.getCreatedAt(), message.getContent());
+            }
+        });
+    }
+
+    /**
+     * 聊天删除后移除其消息；处于事务中时在提交后执行
+     */
+    public void onChatsDeleted(Long userId, Collection<Long> chatIds) {
+        List<Long> ids = List.copyOf(chatIds);
+        afterCommit(() -> {
+            UserMessageIndex index = indexes.get(userId);
+            if (index != null) {
+                index.removeChats(ids);
+            }
+        });
+    }
+
+    /**
+     * 丢弃用户现有索引并从数据库重建
+     */
+    public int rebuild(Long userId) {
+        UserMessageIndex index = new UserMessageIndex();
+        index.ensureLoaded(() -> catchUp(userId, index, null));
+        indexes.put(userId, index);
+        writeSnapshot(userId, index);
+        log.info("重建用户消息索引: userId={}, documents={}", userId, index.size());
+        return index.size();
+    }
+
+    /**
+     * 定期写回脏索引，并卸载超出上限的最久未使用索引
+     */
+    @Scheduled(fixedDelayString = "${app.search.flush-interval-ms:60000}")
+    public void flush() {
+        indexes.forEach((userId, index) -> {
+            if (index.isDirty()) {
+                writeSnapshot(userId, index);
+            }
+        });
+        int excess = indexes.size() - maxLoadedUsers;
+        if (excess > 0) {
+            indexes.entrySet().stream()
+                    .sorted(Comparator.comparingLong(entry -> entry.getValue().getLastAccessNanos()))
+                    .limit(excess)
+                    .toList()
+                    .forEach(entry -> {
+                        indexes.remove(entry.getKey(), entry.getValue());
+                        if (entry.getValue().isDirty()) {
+                            writeSnapshot(entry.getKey(), entry.getValue());
+                        }
+                    });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        indexes.forEach((userId, index) -> {
+            if (index.isDirty()) {
+                writeSnapshot(userId, index);
+            }
+        });
+    }
+
+    private UserMessageIndex acquire(Long userId) {
+        UserMessageIndex index = indexes.computeIfAbsent(userId, id -> new UserMessageIndex());
+        index.ensureLoaded(() -> load(userId, index));
+        if (refreshIntervalNanos > 0 && index.claimCatchUp(refreshIntervalNanos)) {
+            LocalDateTime latest = index.getLatestCreatedAt();
+            catchUp(userId, index, latest != null ? latest.minusSeconds(catchUpSlackSeconds) : null);
+        }
+        return index;
+    }
+
+    private void load(Long userId, UserMessageIndex index) {
+        long startedAt = System.currentTimeMillis();
+        Path file = snapshotPath(userId);
+        LocalDateTime since = null;
+        boolean fromSnapshot = false;
+        if (Files.exists(file)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                LocalDateTime latest = index.loadFrom(in);
+                since = latest != null ? latest.minusSeconds(catchUpSlackSeconds) : null;
+                fromSnapshot = true;
+                // 同步快照之后被删除的聊天
+                Set<Long> liveChatIds = new HashSet<>(jdbcTemplate.queryForList(
+                        "SELECT id FROM chats WHERE user_id = ?", Long.class, userId));
+                index.retainChats(liveChatIds);
+            } catch (IOException e) {
+                log.warn("读取用户消息索引快照失败，改为从数据库重建: userId={}, error={}", userId, e.getMessage());
+                since = null;
+                fromSnapshot = false;
+            }
+        }
+        catchUp(userId, index, since);
+        log.info("加载用户消息索引: userId={}, documents={}, fromSnapshot={}, elapsedMs={}",
+                userId, index.size(), fromSnapshot, System.currentTimeMillis() - startedAt);
+    }
+
+    /**
+     * 从数据库补齐创建时间不早于 since 的消息（since 为空时为全部消息）
+     */
+    private void catchUp(Long userId, UserMessageIndex index, LocalDateTime since) {
+        jdbcTemplate.query(USER_MESSAGES_SQL, resultSet -> {
+            index.add(resultSet.getLong("id"), resultSet.getLong("chat_id"),
+                    resultSet.getObject("created_at", LocalDateTime.class), resultSet.getString("content"));
+        }, userId, since != null ? since : LocalDateTime.of(1970, 1, 1, 0, 0));
+    }
+
+    private void writeSnapshot(Long userId, UserMessageIndex index) {
+        Path file = snapshotPath(userId);
+        try {
+            Files.createDirectories(indexDir);
+            Path temp = Files.createTempFile(indexDir, "user-" + userId, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                index.writeTo(out);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("写入用户消息索引快照失败: userId={}, error={}", userId, e.getMessage());
+        }
+    }
+
+    private Path snapshotPath(Long userId) {
+        return indexDir.resolve("user-" + userId + ".idx");
+    }
+
+    /**
+     * 截取包含第一个命中位置的片段，并给出片段内各命中区间 [start, end)
+     */
+    private void applySnippet(ChatDTO.MessageSearchHit hit, String content, Set<String> terms) {
+        List<int[]> ranges = new ArrayList<>();
+        for (SearchTokenizer.Token token : SearchTokenizer.tokenizeForIndex(content)) {
+            if (!terms.contains(token.term())) {
+                continue;
+            }
+            int[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if (last != null && token.start() <= last[1]) {
+                last[1] = Math.max(last[1], token.end());
+            } else {
+                ranges.add(new int[]{token.start(), token.end()});
+            }
+        }
+
+        int start = ranges.isEmpty() ? 0 : Math.max(0, ranges.get(0)[0] - snippetLength / 4);
+        int end = Math.min(content.length(), start + snippetLength);
+        String prefix = start > 0 ? "…" : "";
+        String suffix = end < content.length() ? "…" : "";
+
+        List<int[]> highlights = new ArrayList<>();
+        for (int[] range : ranges) {
+            if (range[0] >= end) {
+                break;
+            }
+            highlights.add(new int[]{range[0] - start + prefix.length(), Math.min(range[1], end) - start + prefix.length()});
+        }
+        hit.setSnippet(prefix + content.substring(start, end) + suffix);
+        hit.setHighlights(highlights);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.aiplatform.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 检索分词：英文单词/数字整体转小写作为词项，中日韩文字同时切分为单字和相邻二字组
+ *
+ * 建索引时输出单字和二字组，查询时连续两个以上汉字只使用二字组，单个汉字使用单字，
+ * 这样既能按词组精确匹配，又能支持单字查询。
+ */
+public final class SearchTokenizer {
+
+    // 过长的词项（如 base64、长 URL）不建索引
+    private static final int MAX_TERM_LENGTH = 64;
+
+    private SearchTokenizer() {
+    }
+
+    /**
+     * 词项及其在原文中的位置 [start, end)
+     */
+    public record Token(String term, int start, int end) {
+    }
+
+    /**
+     * 建索引用的分词结果
+     */
+    public static List<Token> tokenizeForIndex(String text) {
+        return tokenize(text, true);
+    }
+
+    /**
+     * 查询用的分词结果
+     */
+    public static List<Token> tokenizeForQuery(String text) {
+        return tokenize(text, false);
+    }
+
+    private static List<Token> tokenize(String text, boolean forIndex) {
+        List<Token> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        int length = text.length();
+        int index = 0;
+        while (index < length) {
+            int codePoint = text.codePointAt(index);
+            if (isCjk(codePoint)) {
+                int runEnd = index;
+                List<Integer> starts = new ArrayList<>();
+                while (runEnd < length && isCjk(text.codePointAt(runEnd))) {
+                    starts.add(runEnd);
+                    runEnd += Character.charCount(text.codePointAt(runEnd));
+                }
+                starts.add(runEnd);
+                emitCjk(text, starts, forIndex, tokens);
+                index = runEnd;
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                int wordEnd = index;
+                while (wordEnd < length) {
+                    int next = text.codePointAt(wordEnd);
+                    if (!Character.isLetterOrDigit(next) || isCjk(next)) {
+                        break;
+                    }
+                    wordEnd += Character.charCount(next);
+                }
+                if (wordEnd - index <= MAX_TERM_LENGTH) {
+                    tokens.add(new Token(text.substring(index, wordEnd).toLowerCase(Locale.ROOT), index, wordEnd));
+                }
+                index = wordEnd;
+            } else {
+                index += Character.charCount(codePoint);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * starts 为连续 CJK 字符的起始位置，最后一个元素是整段的结束位置
+     */
+    private static void emitCjk(String text, List<Integer> starts, boolean forIndex, List<Token> tokens) {
+        int chars = starts.size() - 1;
+        for (int i = 0; i < chars; i++) {
+            if (forIndex || chars == 1) {
+                tokens.add(new Token(text.substring(starts.get(i), starts.get(i + 1)), starts.get(i), starts.get(i + 1)));
+            }
+            if (i + 1 < chars) {
+                tokens.add(new Token(text.substring(starts.get(i), starts.get(i + 2)), starts.get(i), starts.get(i + 2)));
+            }
+        }
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
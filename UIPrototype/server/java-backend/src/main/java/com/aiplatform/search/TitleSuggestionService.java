@@ -0,0 +1,98 @@
+package com.aiplatform.search;
+
+import com.aiplatform.util.TtlCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 聊天标题搜索建议
+ *
+ * 每个用户的标题索引在首次请求时从数据库加载，之后的建议请求不再访问数据库；
+ * 加载的索引数量有上限，按最久未使用淘汰，空闲超过 TTL 后重新加载。
+ * 聊天创建、改名、删除和新消息在事务提交后同步到已加载的索引；未加载但正在加载时使该次加载结果作废，避免缓存旧数据。
+ */
+@Service
+@Slf4j
+public class TitleSuggestionService {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TtlCache<Long, UserTitleIndex> indexes;
+
+    public TitleSuggestionService(JdbcTemplate jdbcTemplate,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${app.search.suggestions.max-users:5000}") int maxUsers,
+                                  @Value("${app.search.suggestions.ttl-minutes:30}") long ttlMinutes) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.indexes = new TtlCache<>("title-suggestions", maxUsers, Duration.ofMinutes(ttlMinutes), meterRegistry);
+    }
+
+    public List<String> suggest(Long userId, String query, int limit) {
+        if (query == null || query.isBlank()) {
+            return List.of();
+        }
+        return indexes.get(userId, this::load).suggest(query.trim(), limit);
+    }
+
+    public void onChatSaved(Long userId, Long chatId, String title, LocalDateTime lastActivity) {
+        update(userId, index -> index.put(chatId, title, lastActivity), true);
+    }
+
+    public void onChatActivity(Long userId, Long chatId, LocalDateTime lastActivity) {
+        // 只影响排序，未加载时不需要作废正在进行的加载
+        update(userId, index -> index.touch(chatId, lastActivity), false);
+    }
+
+    public void onChatsDeleted(Long userId, Collection<Long> chatIds) {
+        List<Long> ids = List.copyOf(chatIds);
+        update(userId, index -> ids.forEach(index::remove), true);
+    }
+
+    private void update(Long userId, Consumer<UserTitleIndex> change, boolean invalidateIfAbsent) {
+        Runnable action = () -> {
+            // 写路径不计入命中统计、不刷新淘汰顺序
+            UserTitleIndex index = indexes.peek(userId);
+            if (index == null && invalidateIfAbsent) {
+                if (indexes.isLoading(userId)) {
+                    indexes.invalidate(userId);
+                    return;
+                }
+                // 加载可能在 peek 之后刚好完成并写入，再看一次
+                index = indexes.peek(userId);
+            }
+            if (index != null) {
+                change.accept(index);
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private UserTitleIndex load(Long userId) {
+        UserTitleIndex index = new UserTitleIndex();
+        jdbcTemplate.query("SELECT id, title, last_activity FROM chats WHERE user_id = ?", resultSet -> {
+            index.put(resultSet.getLong("id"), resultSet.getString("title"),
+                    resultSet.getObject("last_activity", LocalDateTime.class));
+        }, userId);
+        log.debug("加载用户标题索引: userId={}", userId);
+        return index;
+    }
+}
@@ -0,0 +1,333 @@
+package com.aiplatform.search;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 单个用户的消息倒排索引，按 BM25 打分
+ *
+ * 删除只移除文档表中的记录，倒排表中的残留条目在查询时跳过，写快照前统一压缩。
+ */
+class UserMessageIndex {
+
+    private static final int SNAPSHOT_MAGIC = 0x4D534958;
+    // 版本 2：水位由最大消息ID改为最新消息的创建时间
+    private static final int SNAPSHOT_VERSION = 2;
+    private static final long NO_MESSAGES = Long.MIN_VALUE;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final Map<String, Map<Long, Integer>> postings = new HashMap<>();
+    private final Map<Long, Doc> docs = new HashMap<>();
+    private final Map<Long, Set<Long>> chatDocs = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private long totalLength;
+    // 已索引消息中最新的创建时间（UTC 毫秒），号段分配的ID跨实例不保证递增，不能作为补齐水位
+    private long latestCreatedAt = NO_MESSAGES;
+    private volatile boolean dirty;
+    private volatile boolean loaded;
+    private volatile long lastAccessNanos = System.nanoTime();
+    private final AtomicLong lastCatchUpNanos = new AtomicLong(System.nanoTime());
+
+    private record Doc(long chatId, int length) {
+    }
+
+    /**
+     * 命中的消息
+     */
+    record Hit(long messageId, long chatId, double score) {
+    }
+
+    /**
+     * 查询结果：命中总数与得分最高的若干条
+     */
+    record Result(int total, List<Hit> hits) {
+    }
+
+    void add(long messageId, long chatId, LocalDateTime createdAt, String content) {
+        List<SearchTokenizer.Token> tokens = SearchTokenizer.tokenizeForIndex(content);
+        Map<String, Integer> termFrequencies = new HashMap<>();
+        for (SearchTokenizer.Token token : tokens) {
+            termFrequencies.merge(token.term(), 1, Integer::sum);
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (docs.containsKey(messageId)) {
+                return;
+            }
+            docs.put(messageId, new Doc(chatId, tokens.size()));
+            chatDocs.computeIfAbsent(chatId, id -> new LinkedHashSet<>()).add(messageId);
+            termFrequencies.forEach((term, frequency) ->
+                    postings.computeIfAbsent(term, t -> new HashMap<>()).put(messageId, frequency));
+            totalLength += tokens.size();
+            if (createdAt != null) {
+                latestCreatedAt = Math.max(latestCreatedAt, toMillis(createdAt));
+            }
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void removeMessages(Collection<Long> messageIds) {
+        lock.writeLock().lock();
+        try {
+            for (Long messageId : messageIds) {
+                Doc doc = docs.remove(messageId);
+                if (doc != null) {
+                    totalLength -= doc.length();
+                    Set<Long> ids = chatDocs.get(doc.chatId());
+                    if (ids != null) {
+                        ids.remove(messageId);
+                        if (ids.isEmpty()) {
+                            chatDocs.remove(doc.chatId());
+                        }
+                    }
+                    dirty = true;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void removeChats(Collection<Long> chatIds) {
+        List<Long> messageIds = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (Long chatId : chatIds) {
+                Set<Long> ids = chatDocs.get(chatId);
+                if (ids != null) {
+                    messageIds.addAll(ids);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        removeMessages(messageIds);
+    }
+
+    /**
+     * 移除不在 liveChatIds 中的聊天（快照加载后用于同步离线期间的删除）
+     */
+    void retainChats(Set<Long> liveChatIds) {
+        List<Long> staleChatIds;
+        lock.readLock().lock();
+        try {
+            staleChatIds = chatDocs.keySet().stream().filter(id -> !liveChatIds.contains(id)).toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+        removeChats(staleChatIds);
+    }
+
+    Result search(Collection<String> terms, int limit) {
+        lastAccessNanos = System.nanoTime();
+        lock.readLock().lock();
+        try {
+            int documentCount = docs.size();
+            if (documentCount == 0 || limit <= 0) {
+                return new Result(0, List.of());
+            }
+            double averageLength = Math.max(1.0, (double) totalLength / documentCount);
+
+            Map<Long, Double> scores = new HashMap<>();
+            for (String term : terms) {
+                Map<Long, Integer> posting = postings.get(term);
+                if (posting == null) {
+                    continue;
+                }
+                int documentFrequency = posting.size();
+                double idf = Math.log(1 + (documentCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+                for (Map.Entry<Long, Integer> entry : posting.entrySet()) {
+                    Doc doc = docs.get(entry.getKey());
+                    if (doc == null) {
+                        continue;
+                    }
+                    int frequency = entry.getValue();
+                    double score = idf * frequency * (K1 + 1)
+                            / (frequency + K1 * (1 - B + B * doc.length() / averageLength));
+                    scores.merge(entry.getKey(), score, Double::sum);
+                }
+            }
+
+            // 小顶堆保留得分最高的 limit 条；同分时较新的消息优先
+            Comparator<Hit> order = Comparator.comparingDouble(Hit::score).thenComparingLong(Hit::messageId);
+            PriorityQueue<Hit> top = new PriorityQueue<>(Math.min(limit, scores.size()) + 1, order);
+            for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+                top.offer(new Hit(entry.getKey(), docs.get(entry.getKey()).chatId(), entry.getValue()));
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+            List<Hit> hits = new ArrayList<>(top);
+            hits.sort(order.reversed());
+            return new Result(scores.size(), hits);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 已索引消息中最新的创建时间，没有消息时返回 null
+     */
+    LocalDateTime getLatestCreatedAt() {
+        lock.readLock().lock();
+        try {
+            return fromMillis(latestCreatedAt);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return docs.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    boolean isDirty() {
+        return dirty;
+    }
+
+    long getLastAccessNanos() {
+        return lastAccessNanos;
+    }
+
+    /**
+     * 距上次从数据库补齐已超过 intervalNanos 时记下本次补齐并返回 true；并发调用中只有一个得到 true
+     */
+    boolean claimCatchUp(long intervalNanos) {
+        long last = lastCatchUpNanos.get();
+        long now = System.nanoTime();
+        return now - last >= intervalNanos && lastCatchUpNanos.compareAndSet(last, now);
+    }
+
+    /**
+     * 压缩倒排表后写出快照
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        lock.writeLock().lock();
+        try {
+            compact();
+            dirty = false;
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(latestCreatedAt);
+            out.writeInt(docs.size());
+            for (Map.Entry<Long, Doc> entry : docs.entrySet()) {
+                out.writeLong(entry.getKey());
+                out.writeLong(entry.getValue().chatId());
+                out.writeInt(entry.getValue().length());
+            }
+            out.writeInt(postings.size());
+            for (Map.Entry<String, Map<Long, Integer>> entry : postings.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (Map.Entry<Long, Integer> posting : entry.getValue().entrySet()) {
+                    out.writeLong(posting.getKey());
+                    out.writeInt(posting.getValue());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 把快照合并进当前索引（加载期间实时写入的消息保留），返回快照中最新消息的创建时间，没有消息时返回 null
+     */
+    LocalDateTime loadFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+            throw new IOException("不支持的索引快照格式");
+        }
+        long snapshotLatestCreatedAt = in.readLong();
+        Map<Long, Doc> snapshotDocs = new HashMap<>();
+        int documentCount = in.readInt();
+        for (int i = 0; i < documentCount; i++) {
+            snapshotDocs.put(in.readLong(), new Doc(in.readLong(), in.readInt()));
+        }
+        Map<String, Map<Long, Integer>> snapshotPostings = new HashMap<>();
+        int termCount = in.readInt();
+        for (int i = 0; i < termCount; i++) {
+            String term = in.readUTF();
+            int postingCount = in.readInt();
+            Map<Long, Integer> posting = new HashMap<>(postingCount * 2);
+            for (int j = 0; j < postingCount; j++) {
+                posting.put(in.readLong(), in.readInt());
+            }
+            snapshotPostings.put(term, posting);
+        }
+
+        lock.writeLock().lock();
+        try {
+            snapshotDocs.forEach((messageId, doc) -> {
+                if (docs.putIfAbsent(messageId, doc) == null) {
+                    chatDocs.computeIfAbsent(doc.chatId(), id -> new LinkedHashSet<>()).add(messageId);
+                    totalLength += doc.length();
+                }
+            });
+            snapshotPostings.forEach((term, posting) ->
+                    postings.computeIfAbsent(term, t -> new HashMap<>()).putAll(posting));
+            latestCreatedAt = Math.max(latestCreatedAt, snapshotLatestCreatedAt);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return fromMillis(snapshotLatestCreatedAt);
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime fromMillis(long millis) {
+        return millis == NO_MESSAGES ? null
+                : LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000), (int) Math.floorMod(millis, 1000) * 1_000_000, ZoneOffset.UTC);
+    }
+
+    /**
+     * 首次使用时加载（快照或数据库），只执行一次；加载失败时下次使用再重试
+     */
+    void ensureLoaded(Runnable loader) {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (!loaded) {
+                loader.run();
+                loaded = true;
+            }
+        }
+    }
+
+    private void compact() {
+        Iterator<Map<Long, Integer>> iterator = postings.values().iterator();
+        while (iterator.hasNext()) {
+            Map<Long, Integer> posting = iterator.next();
+            posting.keySet().retainAll(docs.keySet());
+            if (posting.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+}
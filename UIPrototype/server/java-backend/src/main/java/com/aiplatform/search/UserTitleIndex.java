@@ -0,0 +1,108 @@
+package com.aiplatform.search;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 单个用户的聊天标题二字组索引，语义与 LOWER(title) LIKE '%query%' 一致
+ *
+ * 查询词的每个二字组对应一个聊天集合，取交集后再用 contains 校验；单字查询直接扫描该用户的全部标题。
+ */
+class UserTitleIndex {
+
+    private final Map<Long, Entry> chats = new HashMap<>();
+    private final Map<String, Set<Long>> bigrams = new HashMap<>();
+
+    private record Entry(String title, String normalized, LocalDateTime lastActivity) {
+    }
+
+    synchronized void put(long chatId, String title, LocalDateTime lastActivity) {
+        remove(chatId);
+        String normalized = normalize(title);
+        chats.put(chatId, new Entry(title, normalized, lastActivity));
+        for (String bigram : bigramsOf(normalized)) {
+            bigrams.computeIfAbsent(bigram, key -> new HashSet<>()).add(chatId);
+        }
+    }
+
+    synchronized void touch(long chatId, LocalDateTime lastActivity) {
+        Entry entry = chats.get(chatId);
+        if (entry != null) {
+            chats.put(chatId, new Entry(entry.title(), entry.normalized(), lastActivity));
+        }
+    }
+
+    synchronized void remove(long chatId) {
+        Entry entry = chats.remove(chatId);
+        if (entry == null) {
+            return;
+        }
+        for (String bigram : bigramsOf(entry.normalized())) {
+            Set<Long> ids = bigrams.get(bigram);
+            if (ids != null) {
+                ids.remove(chatId);
+                if (ids.isEmpty()) {
+                    bigrams.remove(bigram);
+                }
+            }
+        }
+    }
+
+    /**
+     * 返回标题包含 query（不区分大小写）的聊天标题，按最后活动时间倒序
+     */
+    synchronized List<String> suggest(String query, int limit) {
+        String normalized = normalize(query);
+        List<Entry> matches = new ArrayList<>();
+        for (Long chatId : candidates(normalized)) {
+            Entry entry = chats.get(chatId);
+            if (entry != null && entry.normalized().contains(normalized)) {
+                matches.add(entry);
+            }
+        }
+        return matches.stream()
+                .sorted(Comparator.comparing(Entry::lastActivity, Comparator.nullsLast(Comparator.reverseOrder())))
+                .limit(limit)
+                .map(Entry::title)
+                .toList();
+    }
+
+    private Set<Long> candidates(String normalized) {
+        Set<String> queryBigrams = bigramsOf(normalized);
+        if (queryBigrams.isEmpty()) {
+            return chats.keySet();
+        }
+        Set<Long> result = null;
+        for (String bigram : queryBigrams) {
+            Set<Long> ids = bigrams.get(bigram);
+            if (ids == null) {
+                return Set.of();
+            }
+            if (result == null) {
+                result = new HashSet<>(ids);
+            } else {
+                result.retainAll(ids);
+            }
+        }
+        return result;
+    }
+
+    private static Set<String> bigramsOf(String normalized) {
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i + 2 <= normalized.length(); i++) {
+            result.add(normalized.substring(i, i + 2));
+        }
+        return result;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+}
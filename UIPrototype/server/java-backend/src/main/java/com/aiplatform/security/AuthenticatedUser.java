@@ -0,0 +1,35 @@
+package com.aiplatform.security;
+
+import com.aiplatform.entity.User;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collection;
+
+/**
+ * 已认证用户主体：在 Spring Security 的 User 之上携带用户ID、用户名和角色，控制器无需再查询数据库
+ *
+ * getUsername() 仍然返回邮箱（JWT subject），展示用的用户名通过 getDisplayName() 获取。
+ */
+@Getter
+@EqualsAndHashCode(callSuper = true)
+public class AuthenticatedUser extends org.springframework.security.core.userdetails.User {
+
+    private final Long id;
+    private final String displayName;
+    private final User.UserRole role;
+
+    public AuthenticatedUser(Long id, String email, String displayName, String password, User.UserRole role,
+                             boolean enabled, boolean accountNonLocked,
+                             Collection<? extends GrantedAuthority> authorities) {
+        super(email, password, enabled, true, true, accountNonLocked, authorities);
+        this.id = id;
+        this.displayName = displayName;
+        this.role = role;
+    }
+
+    public String getEmail() {
+        return getUsername();
+    }
+}
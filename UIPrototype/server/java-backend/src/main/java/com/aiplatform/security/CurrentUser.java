@@ -0,0 +1,18 @@
+package com.aiplatform.security;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 注入当前登录用户，支持的参数类型：AuthenticatedUser、Long（用户ID）、String（邮箱）
+ *
+ * 取值来自认证过滤器放入 SecurityContext 的主体，不访问数据库。
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CurrentUser {
+}
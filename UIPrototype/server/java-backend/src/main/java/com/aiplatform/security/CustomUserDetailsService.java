@@ -18,32 +18,40 @@ import java.util.Collections;
 public class CustomUserDetailsService implements UserDetailsService {
 
     private final UserRepository userRepository;
+    private final PrincipalCache principalCache;
 
     @Override
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
-        log.info("=== CustomUserDetailsService.loadUserByUsername ===");
-        log.info("加载用户: {}", email);
-        
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new UsernameNotFoundException("用户不存在: " + email));
-
-        log.info("找到用户: id={}, email={}, username={}, role={}, status={}", 
-                user.getId(), user.getEmail(), user.getUsername(), user.getRole(), user.getStatus());
-        
-        String authority = "ROLE_" + user.getRole().name();
-        log.info("用户权限: {}", authority);
-        
-        UserDetails userDetails = org.springframework.security.core.userdetails.User.builder()
-                .username(user.getEmail())
-                .password(user.getPassword())
-                .authorities(Collections.singletonList(new SimpleGrantedAuthority(authority)))
-                .accountExpired(false)
-                .accountLocked(user.getStatus() == User.UserStatus.banned)
-                .credentialsExpired(false)
-                .disabled(user.getStatus() != User.UserStatus.active)
-                .build();
-        
-        log.info("用户详情构建完成: authorities={}", userDetails.getAuthorities());
+        PrincipalCache.Snapshot snapshot = principalCache.get(email, this::loadSnapshot);
+        if (snapshot == null) {
+            throw new UsernameNotFoundException("用户不存在: " + email);
+        }
+
+        String authority = "ROLE_" + snapshot.role().name();
+
+        // 每次构建新的 UserDetails，缓存中只保留快照
+        UserDetails userDetails = new AuthenticatedUser(
+                snapshot.id(),
+                snapshot.email(),
+                snapshot.username(),
+                snapshot.password(),
+                snapshot.role(),
+                snapshot.status() == User.UserStatus.active,
+                snapshot.status() != User.UserStatus.banned,
+                Collections.singletonList(new SimpleGrantedAuthority(authority)));
+
+        log.debug("用户详情构建完成: email={}, authorities={}", email, userDetails.getAuthorities());
         return userDetails;
     }
-} 
\ No newline at end of file
+
+    private PrincipalCache.Snapshot loadSnapshot(String email) {
+        log.debug("从数据库加载用户: {}", email);
+        return userRepository.findByEmail(email)
+                .map(user -> {
+                    log.debug("找到用户: id={}, email={}, username={}, role={}, status={}",
+                            user.getId(), user.getEmail(), user.getUsername(), user.getRole(), user.getStatus());
+                    return PrincipalCache.Snapshot.of(user);
+                })
+                .orElse(null);
+    }
+}
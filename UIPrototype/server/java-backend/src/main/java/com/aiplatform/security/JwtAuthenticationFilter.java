@@ -1,6 +1,7 @@
 package com.aiplatform.security;
 
 import com.aiplatform.service.UserService;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -33,11 +34,21 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         
         String token = getTokenFromRequest(request);
         
-        if (StringUtils.hasText(token) && jwtTokenProvider.validateToken(token)) {
-            String email = jwtTokenProvider.getEmailFromToken(token);
+        Claims claims = StringUtils.hasText(token) ? jwtTokenProvider.parseAndValidate(token).orElse(null) : null;
+        
+        if (claims != null) {
+            String email = claims.getSubject();
             
             UserDetails userDetails = userDetailsService.loadUserByUsername(email);
             
+            // 邮箱可能已被其他账号占用：令牌中的用户ID必须与当前主体一致
+            Long tokenUserId = JwtTokenProvider.getUserId(claims);
+            if (tokenUserId != null && userDetails instanceof AuthenticatedUser user
+                    && !tokenUserId.equals(user.getId())) {
+                log.warn("JWT用户ID与当前账号不一致: subject={}, uid={}", email, tokenUserId);
+                userDetails = null;
+            }
+            
             if (userDetails != null) {
                 UsernamePasswordAuthenticationToken authentication = 
                     new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
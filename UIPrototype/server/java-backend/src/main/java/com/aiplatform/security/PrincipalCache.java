@@ -0,0 +1,67 @@
+package com.aiplatform.security;
+
+import com.aiplatform.entity.User;
+import com.aiplatform.util.TtlCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * 已认证用户的本地缓存，按 JWT subject（邮箱）索引
+ *
+ * 缓存的是不可变快照而不是 UserDetails 本身：登录后 Spring Security 会擦除 UserDetails 中的密码，
+ * 共享实例会被污染。用户的角色、状态、密码、邮箱或用户名变更时必须调用 evict。
+ */
+@Component
+@Slf4j
+public class PrincipalCache {
+
+    private final TtlCache<String, Snapshot> cache;
+
+    public PrincipalCache(MeterRegistry meterRegistry,
+                          @Value("${app.security.principal-cache.max-size:10000}") int maxSize,
+                          @Value("${app.security.principal-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.cache = new TtlCache<>("principals", maxSize, Duration.ofSeconds(ttlSeconds), meterRegistry);
+    }
+
+    public Snapshot get(String email, Function<String, Snapshot> loader) {
+        return cache.get(email, loader);
+    }
+
+    /**
+     * 立即失效；若处于事务中，提交后再失效一次，避免并发请求在提交前读到旧数据并写回缓存
+     */
+    public void evict(String email) {
+        if (email == null) {
+            return;
+        }
+        cache.invalidate(email);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.invalidate(email);
+                }
+            });
+        }
+        log.debug("失效用户认证缓存: {}", email);
+    }
+
+    /**
+     * 认证所需的用户字段快照
+     */
+    public record Snapshot(Long id, String email, String username, String password,
+                           User.UserRole role, User.UserStatus status) {
+
+        public static Snapshot of(User user) {
+            return new Snapshot(user.getId(), user.getEmail(), user.getUsername(), user.getPassword(),
+                    user.getRole(), user.getStatus());
+        }
+    }
+}
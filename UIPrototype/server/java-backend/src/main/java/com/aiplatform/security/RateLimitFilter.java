@@ -0,0 +1,166 @@
+package com.aiplatform.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按路由限流
+ *
+ * 规则来自 app.rate-limit.rules.&lt;name&gt;.*：按路径（Ant 风格，不含 context-path，可配置多个）和方法匹配，取第一条匹配的规则；
+ * key=user 时按登录用户计数（未登录时按IP），key=ip 时按客户端IP计数；roles.&lt;角色&gt; 可按角色覆盖容量和速率。
+ * 超出限制时返回 429 和 Retry-After（秒），并计数 ratelimit.rejected。
+ * 位于 JWT 认证之后，以便按用户和角色计数。
+ */
+@Component
+@Slf4j
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final String ANONYMOUS = "anonymous";
+
+    private final RateLimiter rateLimiter;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final List<Rule> rules = new ArrayList<>();
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    /**
+     * 容量与速率
+     */
+    @Data
+    public static class Limit {
+        private Integer capacity;
+        private Integer requestsPerMinute;
+    }
+
+    /**
+     * 一条限流规则
+     */
+    @Data
+    public static class RuleConfig {
+        private List<String> patterns = new ArrayList<>();
+        private List<String> methods = new ArrayList<>();
+        private String key = "user";
+        private Integer capacity;
+        private Integer requestsPerMinute;
+        private Map<String, Limit> roles = new LinkedHashMap<>();
+    }
+
+    private record Rule(String name, RuleConfig config, Counter rejected) {
+    }
+
+    public RateLimitFilter(RateLimiter rateLimiter, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                           Environment environment) {
+        this.rateLimiter = rateLimiter;
+        this.objectMapper = objectMapper;
+        Binder binder = Binder.get(environment);
+        this.enabled = binder.bind("app.rate-limit.enabled", Boolean.class).orElse(true);
+        int defaultCapacity = binder.bind("app.rate-limit.capacity", Integer.class).orElse(60);
+        int defaultRate = binder.bind("app.rate-limit.requests-per-minute", Integer.class).orElse(60);
+
+        Map<String, RuleConfig> configured = binder.bind("app.rate-limit.rules",
+                Bindable.mapOf(String.class, RuleConfig.class)).orElse(Map.of());
+        configured.forEach((name, config) -> {
+            if (config.getPatterns().isEmpty()) {
+                log.warn("限流规则缺少 patterns，已忽略: {}", name);
+                return;
+            }
+            if (config.getCapacity() == null) {
+                config.setCapacity(defaultCapacity);
+            }
+            if (config.getRequestsPerMinute() == null) {
+                config.setRequestsPerMinute(defaultRate);
+            }
+            rules.add(new Rule(name, config,
+                    Counter.builder("ratelimit.rejected").tag("rule", name).register(meterRegistry)));
+            log.info("注册限流规则: name={}, patterns={}, key={}, capacity={}, requestsPerMinute={}",
+                    name, config.getPatterns(), config.getKey(), config.getCapacity(), config.getRequestsPerMinute());
+        });
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || rules.isEmpty() || "OPTIONS".equalsIgnoreCase(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        Rule rule = match(request);
+        if (rule != null) {
+            AuthenticatedUser user = currentUser();
+            String role = user != null && user.getRole() != null ? user.getRole().name() : ANONYMOUS;
+            String key = "user".equalsIgnoreCase(rule.config().getKey()) && user != null
+                    ? "u:" + user.getId()
+                    : "ip:" + request.getRemoteAddr();
+
+            RuleConfig config = rule.config();
+            Limit override = config.getRoles().get(role);
+            int capacity = override != null && override.getCapacity() != null ? override.getCapacity() : config.getCapacity();
+            int rate = override != null && override.getRequestsPerMinute() != null
+                    ? override.getRequestsPerMinute() : config.getRequestsPerMinute();
+
+            long waitMillis = rateLimiter.tryAcquire(rule.name(), key, capacity, rate);
+            if (waitMillis > 0) {
+                rule.rejected().increment();
+                log.warn("请求被限流: rule={}, key={}, retryAfterMs={}", rule.name(), key, waitMillis);
+                reject(response, waitMillis);
+                return;
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private Rule match(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        for (Rule rule : rules) {
+            List<String> methods = rule.config().getMethods();
+            boolean methodMatches = methods.isEmpty()
+                    || methods.stream().anyMatch(method -> method.equalsIgnoreCase(request.getMethod()));
+            if (methodMatches && rule.config().getPatterns().stream().anyMatch(pattern -> pathMatcher.match(pattern, path))) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    private static AuthenticatedUser currentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.getPrincipal() instanceof AuthenticatedUser user ? user : null;
+    }
+
+    private void reject(HttpServletResponse response, long waitMillis) throws IOException {
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf((waitMillis + 999) / 1000));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("success", false);
+        body.put("error", "请求过于频繁，请稍后重试");
+        objectMapper.writeValue(response.getWriter(), body);
+    }
+}
@@ -0,0 +1,104 @@
+package com.aiplatform.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 令牌桶限流（GCRA 形式）
+ *
+ * 每个桶只保存一个“理论到达时间”：每次请求把它向后推一个补充间隔，超出突发容量时拒绝，差值即需要等待的时间。
+ * 本地模式下每条规则一组固定数量的原子槽位，按计数键的哈希分到槽位上用 CAS 更新，没有全局锁，内存有界；
+ * 哈希冲突的键共享同一个桶，只会更严格。store=redis 时改用 Redis 脚本在多个实例间共享状态，
+ * Redis 不可用时退回本地计数。
+ */
+@Component
+@Slf4j
+public class RateLimiter {
+
+    private static final String REDIS_SCRIPT =
+            "local t = redis.call('TIME') " +
+            "local now = tonumber(t[1]) * 1000000 + tonumber(t[2]) " +
+            "local interval = tonumber(ARGV[1]) " +
+            "local burst = tonumber(ARGV[2]) " +
+            "local tat = tonumber(redis.call('GET', KEYS[1]) or now) " +
+            "if tat < now then tat = now end " +
+            "local newTat = tat + interval " +
+            "if newTat - now > burst then return newTat - now - burst end " +
+            "redis.call('SET', KEYS[1], string.format('%d', newTat), 'PX', math.ceil((newTat - now) / 1000) + 1000) " +
+            "return 0";
+
+    private final int stripes;
+    private final boolean shared;
+    private final StringRedisTemplate redisTemplate;
+    private final DefaultRedisScript<Long> script = new DefaultRedisScript<>(REDIS_SCRIPT, Long.class);
+    private final Map<String, AtomicLongArray> buckets = new ConcurrentHashMap<>();
+    private final long epoch = System.nanoTime();
+
+    public RateLimiter(ObjectProvider<StringRedisTemplate> redisTemplate,
+                       @Value("${app.rate-limit.stripes:16384}") int stripes,
+                       @Value("${app.rate-limit.store:local}") String store) {
+        // 槽位数取 2 的幂，便于用位运算取模
+        this.stripes = Integer.highestOneBit(Math.max(2, stripes - 1)) << 1;
+        StringRedisTemplate template = "redis".equalsIgnoreCase(store) ? redisTemplate.getIfAvailable() : null;
+        if ("redis".equalsIgnoreCase(store) && template == null) {
+            log.warn("限流配置为 Redis 共享模式，但没有可用的 Redis 连接，改用本地计数");
+        }
+        this.redisTemplate = template;
+        this.shared = template != null;
+    }
+
+    /**
+     * 从 bucket 中取一个令牌；允许时返回 0，否则返回需要等待的毫秒数
+     *
+     * @param rule              规则名称，不同规则的桶相互独立
+     * @param key               计数键（用户或IP）
+     * @param capacity          突发容量
+     * @param requestsPerMinute 令牌补充速率
+     */
+    public long tryAcquire(String rule, String key, int capacity, int requestsPerMinute) {
+        long intervalNanos = TimeUnit.MINUTES.toNanos(1) / Math.max(1, requestsPerMinute);
+        long burstNanos = intervalNanos * Math.max(1, capacity);
+        if (shared) {
+            try {
+                Long waitMicros = redisTemplate.execute(script, List.of("rate:" + rule + ":" + key),
+                        String.valueOf(intervalNanos / 1000), String.valueOf(burstNanos / 1000));
+                return waitMicros == null || waitMicros <= 0 ? 0 : toMillis(waitMicros * 1000);
+            } catch (RuntimeException e) {
+                log.warn("Redis 限流不可用，改用本地计数: rule={}, error={}", rule, e.getMessage());
+            }
+        }
+        return tryAcquireLocal(rule, key, intervalNanos, burstNanos);
+    }
+
+    private long tryAcquireLocal(String rule, String key, long intervalNanos, long burstNanos) {
+        AtomicLongArray slots = buckets.computeIfAbsent(rule, name -> new AtomicLongArray(stripes));
+        int hash = key.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & (stripes - 1);
+        while (true) {
+            long now = System.nanoTime() - epoch;
+            long tat = slots.get(slot);
+            long newTat = Math.max(tat, now) + intervalNanos;
+            long excess = newTat - now - burstNanos;
+            if (excess > 0) {
+                return toMillis(excess);
+            }
+            if (slots.compareAndSet(slot, tat, newTat)) {
+                return 0;
+            }
+        }
+    }
+
+    private static long toMillis(long nanos) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos + 999_999));
+    }
+}
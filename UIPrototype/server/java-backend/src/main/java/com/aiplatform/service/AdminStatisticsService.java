@@ -0,0 +1,123 @@
+package com.aiplatform.service;
+
+import com.aiplatform.dto.UserDTO;
+import com.aiplatform.entity.User;
+import com.aiplatform.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 管理后台用户统计
+ *
+ * 统计结果由一条按角色、状态分组的聚合查询生成，保存为不可变快照；
+ * 定时刷新，也可以手动刷新，所有管理员读取同一份快照，响应中带有快照生成时间和已过去的秒数。
+ */
+@Service
+@Slf4j
+public class AdminStatisticsService {
+
+    private final UserRepository userRepository;
+    private final Duration minRefreshInterval;
+    private final Object refreshLock = new Object();
+    private volatile Snapshot snapshot;
+
+    /**
+     * 某一时刻的统计结果
+     */
+    private record Snapshot(long totalUsers, long activeUsers, long adminUsers, long customerServiceUsers,
+                            long newUsersThisMonth, long lockedUsers, LocalDateTime generatedAt) {
+    }
+
+    public AdminStatisticsService(UserRepository userRepository,
+                                  @Value("${app.admin.statistics.min-refresh-interval-seconds:5}") long minRefreshIntervalSeconds) {
+        this.userRepository = userRepository;
+        this.minRefreshInterval = Duration.ofSeconds(minRefreshIntervalSeconds);
+    }
+
+    /**
+     * 返回当前快照，尚未生成时先生成
+     */
+    public UserDTO.UserStatistics getStatistics() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            current = refresh(false);
+        }
+        return toResponse(current);
+    }
+
+    /**
+     * 手动刷新；距上次刷新不足最小间隔时直接返回现有快照，避免多个管理员同时刷新
+     */
+    public UserDTO.UserStatistics refreshNow() {
+        return toResponse(refresh(false));
+    }
+
+    @Scheduled(fixedDelayString = "${app.admin.statistics.refresh-interval-ms:60000}",
+               initialDelayString = "${app.admin.statistics.refresh-interval-ms:60000}")
+    public void scheduledRefresh() {
+        try {
+            refresh(true);
+        } catch (Exception e) {
+            log.error("定时刷新用户统计失败: {}", e.getMessage());
+        }
+    }
+
+    private Snapshot refresh(boolean force) {
+        synchronized (refreshLock) {
+            Snapshot current = snapshot;
+            if (!force && current != null
+                    && Duration.between(current.generatedAt(), LocalDateTime.now()).compareTo(minRefreshInterval) < 0) {
+                return current;
+            }
+            Snapshot fresh = load();
+            snapshot = fresh;
+            return fresh;
+        }
+    }
+
+    private Snapshot load() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime monthStart = now.toLocalDate().withDayOfMonth(1).atStartOfDay();
+        List<Object[]> rows = userRepository.countGroupByRoleAndStatus(monthStart);
+
+        long total = 0, active = 0, admins = 0, support = 0, newUsers = 0, locked = 0;
+        for (Object[] row : rows) {
+            User.UserRole role = (User.UserRole) row[0];
+            User.UserStatus status = (User.UserStatus) row[1];
+            long count = row[2] != null ? ((Number) row[2]).longValue() : 0;
+            total += count;
+            newUsers += row[3] != null ? ((Number) row[3]).longValue() : 0;
+            if (status == User.UserStatus.active) {
+                active += count;
+            } else if (status == User.UserStatus.banned) {
+                locked += count;
+            }
+            if (role == User.UserRole.admin) {
+                admins += count;
+            } else if (role == User.UserRole.support) {
+                support += count;
+            }
+        }
+        log.debug("用户统计已刷新: total={}, groups={}", total, rows.size());
+        return new Snapshot(total, active, admins, support, newUsers, locked, now);
+    }
+
+    private static UserDTO.UserStatistics toResponse(Snapshot snapshot) {
+        UserDTO.UserStatistics stats = new UserDTO.UserStatistics();
+        stats.setTotalUsers(snapshot.totalUsers());
+        stats.setActiveUsers(snapshot.activeUsers());
+        stats.setAdminUsers(snapshot.adminUsers());
+        stats.setCustomerServiceUsers(snapshot.customerServiceUsers());
+        stats.setNewUsersThisMonth(snapshot.newUsersThisMonth());
+        stats.setLockedUsers(snapshot.lockedUsers());
+        stats.setGeneratedAt(snapshot.generatedAt());
+        stats.setAgeSeconds(Duration.between(snapshot.generatedAt(), LocalDateTime.now()).getSeconds());
+        return stats;
+    }
+}
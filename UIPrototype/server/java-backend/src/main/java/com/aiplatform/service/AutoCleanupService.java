@@ -0,0 +1,101 @@
+package com.aiplatform.service;
+
+import com.aiplatform.config.AsyncConfig;
+import com.aiplatform.dto.ChatDTO;
+import com.aiplatform.util.TtlCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * 登录触发的过期数据清理
+ *
+ * 按用户去重：窗口期内已触发过的用户直接跳过，同一用户同时只会有一个清理任务在执行，
+ * 多个标签页或频繁登录不会重复扫描。通过的请求提交到有界的 cleanup 线程池，池满时丢弃。
+ * 任务被拒绝或清理失败时移除去重记录，下次登录可以重新触发。去重记录只保存在本实例内存中。
+ */
+@Service
+@Slf4j
+public class AutoCleanupService {
+
+    private final ChatPurgeService chatPurgeService;
+    private final Executor cleanupExecutor;
+    private final TtlCache<Long, LocalDateTime> recentCleanups;
+    private final Set<Long> running = ConcurrentHashMap.newKeySet();
+    private final Counter scheduled;
+    private final Counter skipped;
+    private final Counter rejected;
+
+    public AutoCleanupService(ChatPurgeService chatPurgeService,
+                              @Qualifier(AsyncConfig.CLEANUP_EXECUTOR) Executor cleanupExecutor,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.data.retention.login-cleanup.window-minutes:60}") long windowMinutes,
+                              @Value("${app.data.retention.login-cleanup.max-users:100000}") int maxUsers) {
+        this.chatPurgeService = chatPurgeService;
+        this.cleanupExecutor = cleanupExecutor;
+        this.recentCleanups = new TtlCache<>("login-cleanups", maxUsers, Duration.ofMinutes(windowMinutes), meterRegistry);
+        this.scheduled = Counter.builder("cleanup.login.requests").tag("result", "scheduled").register(meterRegistry);
+        this.skipped = Counter.builder("cleanup.login.requests").tag("result", "skipped").register(meterRegistry);
+        this.rejected = Counter.builder("cleanup.login.requests").tag("result", "rejected").register(meterRegistry);
+    }
+
+    /**
+     * 登录时触发自动清理（异步执行，窗口期内重复触发会被合并）
+     */
+    public void triggerAutoCleanupForUser(Long userId) {
+        LocalDateTime previous = recentCleanups.putIfAbsent(userId, LocalDateTime.now());
+        if (previous != null) {
+            skipped.increment();
+            log.debug("用户 {} 在 {} 已触发过自动清理，跳过", userId, previous);
+            return;
+        }
+        try {
+            cleanupExecutor.execute(() -> runCleanup(userId));
+            scheduled.increment();
+        } catch (TaskRejectedException e) {
+            recentCleanups.invalidate(userId);
+            rejected.increment();
+            log.warn("cleanup 线程池已满，丢弃用户 {} 的自动清理", userId);
+        }
+    }
+
+    private void runCleanup(Long userId) {
+        // 清理耗时超过窗口期时，防止同一用户的两个任务并发执行
+        if (!running.add(userId)) {
+            log.debug("用户 {} 的自动清理正在执行，跳过", userId);
+            return;
+        }
+        try {
+            log.info("开始为用户 {} 执行登录自动清理", userId);
+
+            // 计算30天前的时间
+            LocalDateTime cutoffDate = LocalDateTime.now().minusDays(30);
+
+            // 分批删除非保护且超过30天的聊天及其消息
+            ChatDTO.PurgeResult result = chatPurgeService.purgeExpired(userId, cutoffDate);
+
+            if (result.getDeletedChats() > 0) {
+                log.info("用户 {} 登录自动清理完成: 删除了 {} 个过期对话, {} 条消息",
+                        userId, result.getDeletedChats(), result.getDeletedMessages());
+            } else {
+                log.info("用户 {} 没有需要清理的过期对话", userId);
+            }
+
+        } catch (Exception e) {
+            recentCleanups.invalidate(userId);
+            log.error("用户 {} 登录自动清理失败: {}", userId, e.getMessage());
+        } finally {
+            running.remove(userId);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.aiplatform.service;
+
+import com.aiplatform.dto.ChatDTO;
+import com.aiplatform.search.MessageSearchService;
+import com.aiplatform.search.TitleSuggestionService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 聊天批量清理
+ *
+ * 按 id 顺序分块选出候选聊天，每块先用一条 UPDATE 按选择条件（非保护、早于 cutoff）把仍满足条件的聊天标记为 purging，
+ * 再对标记的聊天批量执行 DELETE ... WHERE chat_id = ? LIMIT n（一次往返，每条语句的删除行数准确），
+ * 删满 n 条的聊天进入下一轮，直到消息删完，最后删除这些聊天。
+ * 标记之后发送消息（累加计数的 UPDATE 排除 purging）和修改保护状态都会被拒绝，已选中的聊天不会在删除消息之后又被保留；
+ * 标记语句与并发的发送、保护操作在行锁上串行，后者先提交时按新的活动时间和保护状态重新判断。
+ * 每条语句单独提交，行锁只在单个批次内持有；不加载实体，不经过持久化上下文。
+ * 中途失败留下的 purging 聊天在该用户下一次清理时一并删除。
+ * 调用方处于事务中时挂起该事务，避免整个清理过程被包进一个长事务。
+ */
+@Service
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@RequiredArgsConstructor
+@Slf4j
+public class ChatPurgeService {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final MessageSearchService messageSearchService;
+    private final TitleSuggestionService titleSuggestionService;
+    private final UserStatsService userStatsService;
+
+    @Value("${app.data.purge.chat-batch-size:100}")
+    private int chatBatchSize;
+
+    @Value("${app.data.purge.message-batch-size:5000}")
+    private int messageBatchSize;
+
+    /**
+     * 清理最后活动时间早于 cutoff 的非保护聊天
+     */
+    public ChatDTO.PurgeResult purgeExpired(Long userId, LocalDateTime cutoff) {
+        return purge(userId, cutoff);
+    }
+
+    /**
+     * 清理用户所有非保护聊天
+     */
+    public ChatDTO.PurgeResult purgeUnprotected(Long userId) {
+        return purge(userId, null);
+    }
+
+    /**
+     * 聊天总数超过 maxChats 时，按最后活动时间从旧到新删除超出部分的非保护聊天
+     */
+    public ChatDTO.PurgeResult purgeOverflow(Long userId, int maxChats) {
+        long startedAt = System.currentTimeMillis();
+        MapSqlParameterSource params = new MapSqlParameterSource("userId", userId);
+        Long total = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM chats WHERE user_id = :userId", params, Long.class);
+        long excess = (total != null ? total : 0) - Math.max(maxChats, 0);
+        if (excess <= 0) {
+            return new ChatDTO.PurgeResult(0, 0, System.currentTimeMillis() - startedAt);
+        }
+
+        params.addValue("limit", excess);
+        List<Long> chatIds = jdbcTemplate.queryForList(
+                "SELECT id FROM chats WHERE user_id = :userId AND is_protected = false " +
+                "ORDER BY last_activity, id LIMIT :limit", params, Long.class);
+
+        Totals totals = new Totals();
+        for (int from = 0; from < chatIds.size(); from += chatBatchSize) {
+            List<Long> chunk = chatIds.subList(from, Math.min(from + chatBatchSize, chatIds.size()));
+            deleteClaimed(userId, claim(userId, null, chunk), totals);
+        }
+
+        if (totals.chats > 0) {
+            userStatsService.recalculate(userId);
+        }
+        ChatDTO.PurgeResult result = new ChatDTO.PurgeResult(totals.chats, totals.messages,
+                System.currentTimeMillis() - startedAt);
+        log.info("超出数量上限的聊天清理完成: userId={}, maxChats={}, deletedChats={}, deletedMessages={}, elapsedMs={}",
+                userId, maxChats, result.getDeletedChats(), result.getDeletedMessages(), result.getElapsedMs());
+        return result;
+    }
+
+    private ChatDTO.PurgeResult purge(Long userId, LocalDateTime cutoff) {
+        long startedAt = System.currentTimeMillis();
+        Totals totals = new Totals();
+        long afterId = 0;
+
+        while (true) {
+            List<Long> chunk = selectChunk(userId, cutoff, afterId);
+            if (chunk.isEmpty()) {
+                break;
+            }
+            afterId = chunk.get(chunk.size() - 1);
+            deleteClaimed(userId, claim(userId, cutoff, chunk), totals);
+        }
+
+        if (totals.chats > 0) {
+            // 批量删除不逐条维护统计，结束后整体重算一次
+            userStatsService.recalculate(userId);
+        }
+        ChatDTO.PurgeResult result = new ChatDTO.PurgeResult(totals.chats, totals.messages,
+                System.currentTimeMillis() - startedAt);
+        log.info("批量清理完成: userId={}, cutoff={}, deletedChats={}, deletedMessages={}, elapsedMs={}",
+                userId, cutoff, result.getDeletedChats(), result.getDeletedMessages(), result.getElapsedMs());
+        return result;
+    }
+
+    private List<Long> selectChunk(Long userId, LocalDateTime cutoff, long afterId) {
+        MapSqlParameterSource params = purgeParams(userId, cutoff)
+                .addValue("afterId", afterId)
+                .addValue("limit", chatBatchSize);
+        // 之前中途失败、已标记 purging 的聊天也一并选出
+        String sql = "SELECT id FROM chats WHERE (" + purgeCondition(cutoff) + " OR (user_id = :userId AND purging = true)) " +
+                "AND id > :afterId ORDER BY id LIMIT :limit";
+        return jdbcTemplate.queryForList(sql, params, Long.class);
+    }
+
+    /**
+     * 把仍满足条件的候选聊天标记为 purging，返回本块中已标记的聊天
+     */
+    private List<Long> claim(Long userId, LocalDateTime cutoff, List<Long> candidates) {
+        MapSqlParameterSource params = purgeParams(userId, cutoff)
+                .addValue("chatIds", candidates);
+        jdbcTemplate.update("UPDATE chats SET purging = true WHERE id IN (:chatIds) AND " + purgeCondition(cutoff), params);
+        return jdbcTemplate.queryForList("SELECT id FROM chats WHERE id IN (:chatIds) AND user_id = :userId AND purging = true",
+                params, Long.class);
+    }
+
+    private void deleteClaimed(Long userId, List<Long> chatIds, Totals totals) {
+        if (chatIds.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource("chatIds", chatIds);
+        totals.messages += deleteMessages(chatIds);
+        int deleted;
+        try {
+            deleted = jdbcTemplate.update("DELETE FROM chats WHERE id IN (:chatIds) AND purging = true", params);
+        } catch (DataIntegrityViolationException e) {
+            // 组提交的写入线程可能在删除消息之后才写入标记前已确认的消息，补删后重试一次
+            log.info("聊天删除时仍有新写入的消息，补删后重试: userId={}, chats={}", userId, chatIds.size());
+            totals.messages += deleteMessages(chatIds);
+            deleted = jdbcTemplate.update("DELETE FROM chats WHERE id IN (:chatIds) AND purging = true", params);
+        }
+        totals.chats += deleted;
+        messageSearchService.onChatsDeleted(userId, chatIds);
+        titleSuggestionService.onChatsDeleted(userId, chatIds);
+    }
+
+    private long deleteMessages(List<Long> chatIds) {
+        long total = 0;
+        List<Long> remaining = chatIds;
+        while (!remaining.isEmpty()) {
+            List<Long> round = remaining;
+            int[] counts = jdbcTemplate.getJdbcTemplate().batchUpdate(
+                    "DELETE FROM messages WHERE chat_id = ? LIMIT " + messageBatchSize,
+                    round.stream().map(chatId -> new Object[]{chatId}).toList());
+            List<Long> more = new ArrayList<>();
+            for (int i = 0; i < counts.length; i++) {
+                total += Math.max(counts[i], 0);
+                if (counts[i] == messageBatchSize) {
+                    more.add(round.get(i));
+                }
+            }
+            remaining = more;
+        }
+        return total;
+    }
+
+    /**
+     * 待删聊天的条件：属于该用户、非保护；cutoff 不为空时还要求最后活动时间早于 cutoff
+     */
+    private static String purgeCondition(LocalDateTime cutoff) {
+        String condition = "user_id = :userId AND is_protected = false";
+        return cutoff != null ? condition + " AND last_activity < :cutoff" : condition;
+    }
+
+    private static MapSqlParameterSource purgeParams(Long userId, LocalDateTime cutoff) {
+        MapSqlParameterSource params = new MapSqlParameterSource("userId", userId);
+        if (cutoff != null) {
+            params.addValue("cutoff", cutoff);
+        }
+        return params;
+    }
+
+    private static class Totals {
+        private int chats;
+        private long messages;
+    }
+}
@@ -1,5 +1,8 @@
 package com.aiplatform.service;
 
+import com.aiplatform.ai.AiEngineRegistry;
+import com.aiplatform.ai.AiRequest;
+import com.aiplatform.dto.ChatDTO;
 import com.aiplatform.entity.Chat;
 import com.aiplatform.entity.Message;
 import com.aiplatform.entity.User;
@@ -7,29 +10,55 @@ import com.aiplatform.repository.ChatRepository;
 import com.aiplatform.repository.MessageRepository;
 import com.aiplatform.repository.UserRepository;
 import com.aiplatform.exception.BusinessException;
+import com.aiplatform.search.MessageSearchService;
+import com.aiplatform.search.TitleSuggestionService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
-@Transactional
 public class ChatService {
 
     private final ChatRepository chatRepository;
     private final MessageRepository messageRepository;
     private final UserRepository userRepository;
+    private final AiEngineRegistry aiEngineRegistry;
+    private final MessageSearchService messageSearchService;
+    private final TitleSuggestionService titleSuggestionService;
+    private final UserStatsService userStatsService;
+    private final MessageWriteBuffer messageWriteBuffer;
+
+    @Value("${app.chat.messages.default-page-size:50}")
+    private int defaultMessagePageSize;
+
+    @Value("${app.chat.messages.max-page-size:200}")
+    private int maxMessagePageSize;
 
     /**
      * 创建新的聊天会话
      */
+    @Transactional
     public Chat createChat(Long userId, String title, Chat.AiType aiType) {
         log.info("创建聊天会话: userId={}, title={}, aiType={}", userId, title, aiType);
         
@@ -47,40 +76,135 @@ public class ChatService {
         chat.setLastActivity(LocalDateTime.now());
         
         Chat savedChat = chatRepository.save(chat);
+        userStatsService.onChatCreated(userId);
+        titleSuggestionService.onChatSaved(userId, savedChat.getId(), savedChat.getTitle(), savedChat.getLastActivity());
         log.info("聊天会话创建成功: chatId={}", savedChat.getId());
         
         return savedChat;
     }
 
     /**
-     * 发送消息
+     * 发送消息，返回的 future 在消息写入后完成，调用方在事务结束后用 awaitDurable 等待
      */
-    public Message sendMessage(Long chatId, Long userId, String content, Message.MessageRole role) {
+    @Transactional
+    public CompletableFuture<Message> sendMessage(Long chatId, Long userId, String content, Message.MessageRole role) {
         log.info("发送消息: chatId={}, userId={}, role={}", chatId, userId, role);
         
+        // 单条 UPDATE 同时校验归属并累加消息计数，避免读-改-写丢失并发更新
+        incrementMessageCount(chatId, userId, 1);
+        
+        return saveMessage(chatId, userId, content, role);
+    }
+
+    /**
+     * 一轮对话第一阶段：保存用户消息并计入消息计数（短事务），返回用于生成回复的AI类型
+     *
+     * 用户消息和AI回复各自在保存的事务中计数，任一阶段失败或进程中断都不会使计数与消息行数不一致。
+     */
+    @Transactional
+    public ChatDTO.PromptResult persistPrompt(Long chatId, Long userId, String content) {
+        log.info("保存用户消息: chatId={}, userId={}", chatId, userId);
+        
         // 验证聊天会话存在且属于当前用户
-        Chat chat = chatRepository.findByIdAndUserId(chatId, userId)
+        ChatRepository.PromptTarget target = chatRepository.findPromptTargetByIdAndUserId(chatId, userId)
             .orElseThrow(() -> new BusinessException("聊天会话不存在或无权限访问"));
         
-        // 创建消息
+        incrementMessageCount(chatId, userId, 1);
+        
+        CompletableFuture<Message> userMessage = saveMessage(chatId, userId, content, Message.MessageRole.user);
+        return new ChatDTO.PromptResult(userMessage, target.getAiType(),
+                !Boolean.FALSE.equals(target.getResponseCacheEnabled()));
+    }
+
+    /**
+     * 一轮对话第三阶段：在事务外生成回复后，保存AI回复并计入消息计数（短事务），返回的 future 在回复写入后完成
+     */
+    @Transactional
+    public CompletableFuture<Message> persistReply(Long chatId, Long userId, String content) {
+        log.info("保存AI回复: chatId={}, userId={}", chatId, userId);
+        
+        incrementMessageCount(chatId, userId, 1);
+        
+        return saveMessage(chatId, userId, content, Message.MessageRole.assistant);
+    }
+
+    /**
+     * 等待消息写入；必须在事务之外调用，等待期间不占用数据库连接
+     *
+     * 组提交模式下超时只表示尚未确认，消息仍可能稍后写入；消息计数由写入线程按实际写入的行重算，不会计入未写入的消息。
+     */
+    public Message awaitDurable(CompletableFuture<Message> durable) {
+        try {
+            return durable.get(messageWriteBuffer.getAwaitTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new BusinessException("消息保存超时，请稍后刷新确认");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException("请求已中断");
+        }
+    }
+
+    private void incrementMessageCount(Long chatId, Long userId, int delta) {
+        LocalDateTime now = LocalDateTime.now();
+        // 组提交模式下消息在事务提交之后才写入，由写入线程在插入消息的同一事务中重算计数，这里只校验归属并刷新活动时间
+        int counted = messageWriteBuffer.isEnabled() ? 0 : delta;
+        int updated = chatRepository.incrementMessageCount(chatId, userId, counted, now);
+        if (updated == 0) {
+            throw new BusinessException("聊天会话不存在或无权限访问");
+        }
+        titleSuggestionService.onChatActivity(userId, chatId, now);
+    }
+
+    private CompletableFuture<Message> saveMessage(Long chatId, Long userId, String content, Message.MessageRole role) {
         Message message = new Message();
         message.setChatId(chatId);
         message.setRole(role);
         message.setContent(content);
-        
-        Message savedMessage = messageRepository.save(message);
-        
-        // 更新聊天会话的消息计数和最后活动时间
-        chat.incrementMessageCount();
-        chatRepository.save(chat);
-        
-        log.info("消息发送成功: messageId={}", savedMessage.getId());
-        return savedMessage;
+        if (messageWriteBuffer.isEnabled()) {
+            return bufferMessage(userId, message);
+        }
+        Message saved = messageRepository.save(message);
+        userStatsService.onMessageSaved(userId, content);
+        messageSearchService.onMessageSaved(userId, saved);
+        log.info("消息保存成功: messageId={}", saved.getId());
+        return CompletableFuture.completedFuture(saved);
+    }
+
+    /**
+     * 组提交模式：在本事务中分配ID，事务提交后交给写入缓冲区（不阻塞、不访问数据库）；
+     * 消息计数和用户统计由写入线程在写入消息时更新
+     */
+    private CompletableFuture<Message> bufferMessage(Long userId, Message message) {
+        messageWriteBuffer.prepare(message);
+        CompletableFuture<Message> durable = new CompletableFuture<>();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                messageWriteBuffer.submit(userId, message).whenComplete((saved, error) -> {
+                    if (error != null) {
+                        durable.completeExceptionally(error);
+                    } else {
+                        durable.complete(saved);
+                    }
+                });
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    durable.completeExceptionally(new IllegalStateException("消息所在事务未提交"));
+                }
+            }
+        });
+        return durable;
     }
 
     /**
      * 获取聊天消息列表
      */
+    @Transactional(readOnly = true)
     public List<Message> getChatMessages(Long chatId, Long userId) {
         log.info("获取聊天消息: chatId={}, userId={}", chatId, userId);
         
@@ -91,9 +215,57 @@ public class ChatService {
         return messageRepository.findByChatIdOrderByCreatedAtAsc(chatId);
     }
 
+    /**
+     * 按 (createdAt, id) 游标分页获取聊天消息
+     *
+     * before / after 互斥；都为空时返回最新一页。每页只做一次索引范围扫描，代价与翻页深度无关。
+     */
+    @Transactional(readOnly = true)
+    public ChatDTO.MessagePage getChatMessagesPage(Long chatId, Long userId, String before, String after, Integer limit) {
+        log.info("分页获取聊天消息: chatId={}, userId={}, before={}, after={}, limit={}", chatId, userId, before, after, limit);
+        
+        if (before != null && after != null) {
+            throw new BusinessException("before 和 after 参数不能同时使用");
+        }
+        if (!chatRepository.existsByIdAndUserId(chatId, userId)) {
+            throw new BusinessException("聊天会话不存在或无权限访问");
+        }
+        
+        int pageSize = limit == null || limit <= 0 ? defaultMessagePageSize : Math.min(limit, maxMessagePageSize);
+        // 多取一条用于判断是否还有更多
+        Pageable window = PageRequest.ofSize(pageSize + 1);
+        
+        List<Message> messages;
+        if (after != null) {
+            ChatDTO.MessageCursor cursor = ChatDTO.MessageCursor.decode(after);
+            messages = messageRepository.findPageAfter(chatId, cursor.getCreatedAt(), cursor.getId(), window);
+        } else if (before != null) {
+            ChatDTO.MessageCursor cursor = ChatDTO.MessageCursor.decode(before);
+            messages = messageRepository.findPageBefore(chatId, cursor.getCreatedAt(), cursor.getId(), window);
+        } else {
+            messages = messageRepository.findLatestPage(chatId, window);
+        }
+        
+        boolean hasMore = messages.size() > pageSize;
+        if (hasMore) {
+            messages = messages.subList(0, pageSize);
+        }
+        if (after == null) {
+            // 向前翻页是倒序查询，统一按时间正序返回
+            messages = new ArrayList<>(messages);
+            Collections.reverse(messages);
+        }
+        
+        // 空页时沿用请求中的游标，便于客户端继续轮询新消息
+        String olderCursor = messages.isEmpty() ? before : ChatDTO.MessageCursor.encode(messages.get(0));
+        String newerCursor = messages.isEmpty() ? after : ChatDTO.MessageCursor.encode(messages.get(messages.size() - 1));
+        return new ChatDTO.MessagePage(messages, hasMore, olderCursor, newerCursor);
+    }
+
     /**
      * 获取用户的聊天列表
      */
+    @Transactional(readOnly = true)
     public Page<Chat> getUserChats(Long userId, Pageable pageable) {
         log.info("获取用户聊天列表: userId={}", userId);
         return chatRepository.findByUserIdOrderByLastActivityDesc(userId, pageable);
@@ -102,6 +274,7 @@ public class ChatService {
     /**
      * 删除聊天会话
      */
+    @Transactional
     public void deleteChat(Long chatId, Long userId) {
         log.info("删除聊天会话: chatId={}, userId={}", chatId, userId);
         
@@ -109,11 +282,15 @@ public class ChatService {
         Chat chat = chatRepository.findByIdAndUserId(chatId, userId)
             .orElseThrow(() -> new BusinessException("聊天会话不存在或无权限访问"));
         
+        userStatsService.onChatDeleting(userId, chat);
+        
         // 删除相关消息
         messageRepository.deleteByChatId(chatId);
         
         // 删除聊天会话
         chatRepository.delete(chat);
+        messageSearchService.onChatsDeleted(userId, List.of(chatId));
+        titleSuggestionService.onChatsDeleted(userId, List.of(chatId));
         
         log.info("聊天会话删除成功: chatId={}", chatId);
     }
@@ -121,6 +298,7 @@ public class ChatService {
     /**
      * 更新聊天标题
      */
+    @Transactional
     public Chat updateChatTitle(Long chatId, Long userId, String title) {
         log.info("更新聊天标题: chatId={}, userId={}, title={}", chatId, userId, title);
         
@@ -128,12 +306,15 @@ public class ChatService {
             .orElseThrow(() -> new BusinessException("聊天会话不存在或无权限访问"));
         
         chat.setTitle(title);
-        return chatRepository.save(chat);
+        Chat savedChat = chatRepository.save(chat);
+        titleSuggestionService.onChatSaved(userId, chatId, savedChat.getTitle(), savedChat.getLastActivity());
+        return savedChat;
     }
 
     /**
      * 切换收藏状态
      */
+    @Transactional
     public Chat toggleFavorite(Long chatId, Long userId) {
         log.info("切换收藏状态: chatId={}, userId={}", chatId, userId);
         
@@ -141,44 +322,62 @@ public class ChatService {
             .orElseThrow(() -> new BusinessException("聊天会话不存在或无权限访问"));
         
         chat.setIsFavorite(!chat.getIsFavorite());
+        userStatsService.onFavoriteChanged(userId, chat.getIsFavorite());
         return chatRepository.save(chat);
     }
 
     /**
      * 切换保护状态
      */
+    @Transactional
     public Chat toggleProtection(Long chatId, Long userId) {
         log.info("切换保护状态: chatId={}, userId={}", chatId, userId);
         
-        Chat chat = chatRepository.findByIdAndUserId(chatId, userId)
+        // 加锁读取：批量清理选中聊天的语句会等待本事务提交后重新判断保护状态
+        Chat chat = chatRepository.findForUpdateByIdAndUserId(chatId, userId)
             .orElseThrow(() -> new BusinessException("聊天会话不存在或无权限访问"));
+        if (Boolean.TRUE.equals(chat.getPurging())) {
+            throw new BusinessException("聊天会话正在清理中");
+        }
         
         chat.setIsProtected(!chat.getIsProtected());
+        userStatsService.onProtectionChanged(userId, chat.getIsProtected());
         return chatRepository.save(chat);
     }
 
     /**
-     * 生成AI回复（临时实现）
+     * 设置聊天是否允许使用缓存回复
      */
-    public String generateAIResponse(String userMessage) {
-        if (userMessage == null || userMessage.trim().isEmpty()) {
-            return "请输入您的问题。";
-        }
+    @Transactional
+    public Chat setResponseCacheEnabled(Long chatId, Long userId, boolean enabled) {
+        log.info("设置回复缓存: chatId={}, userId={}, enabled={}", chatId, userId, enabled);
         
-        String message = userMessage.toLowerCase().trim();
-        
-        if (message.contains("你好") || message.contains("hello")) {
-            return "你好！我是AI助手，很高兴为您服务。有什么我可以帮助您的吗？";
-        } else if (message.contains("天气")) {
-            return "很抱歉，我目前无法获取实时天气信息。您可以查看天气预报应用或网站获取准确的天气信息。";
-        } else if (message.contains("时间")) {
-            return "当前时间是：" + LocalDateTime.now().toString();
-        } else if (message.contains("帮助")) {
-            return "我是您的AI助手，可以回答问题、提供建议、协助处理各种任务。请告诉我您需要什么帮助？";
-        } else if (message.contains("功能")) {
-            return "我目前支持文本对话功能。未来将支持图像生成、图像识别、视频生成等更多AI功能。";
-        } else {
-            return "我理解您的问题：\"" + userMessage + "\"。这是一个很好的问题！作为AI助手，我会尽力为您提供帮助和回答。请问您还有其他问题吗？";
+        Chat chat = chatRepository.findByIdAndUserId(chatId, userId)
+            .orElseThrow(() -> new BusinessException("聊天会话不存在或无权限访问"));
+        
+        chat.setResponseCacheEnabled(enabled);
+        return chatRepository.save(chat);
+    }
+
+    /**
+     * 生成AI回复，按聊天的AI类型路由到对应引擎（不占用事务和数据库连接）；
+     * useCache 为 true 时相同提示词可以复用缓存的回复
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public String generateAIResponse(Long chatId, Chat.AiType aiType, String userMessage, boolean useCache) {
+        try {
+            return aiEngineRegistry.generate(new AiRequest(chatId, aiType, userMessage), useCache).join();
+        } catch (CompletionException e) {
+            log.error("AI生成失败: aiType={}, error={}", aiType, e.getMessage());
+            throw new BusinessException(AiEngineRegistry.describeFailure(e));
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * 流式生成AI回复，每个元素是一个增量片段（不占用事务和数据库连接）
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Flow.Publisher<String> streamAIResponse(Long chatId, Chat.AiType aiType, String userMessage) {
+        return aiEngineRegistry.stream(new AiRequest(chatId, aiType, userMessage));
+    }
+}
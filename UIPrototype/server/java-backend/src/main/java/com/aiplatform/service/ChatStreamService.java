@@ -0,0 +1,166 @@
+package com.aiplatform.service;
+
+import com.aiplatform.ai.AiEngineRegistry;
+import com.aiplatform.dto.ChatDTO;
+import com.aiplatform.entity.Message;
+import com.aiplatform.exception.BusinessException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Flow;
+
+/**
+ * 流式聊天服务：以SSE事件增量推送AI回复
+ *
+ * 事件顺序：start（用户消息已保存）→ token（若干）→ done（AI回复已保存）；出错时发送 error。
+ * AI回复在流结束后只保存一次，客户端中途断开不影响回复的生成与保存。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChatStreamService {
+
+    private final ChatService chatService;
+
+    @Value("${app.chat.stream.timeout-ms:120000}")
+    private long streamTimeoutMs;
+
+    /**
+     * 保存用户消息并以SSE流式返回AI回复
+     */
+    public SseEmitter stream(Long chatId, Long userId, String content) {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        StreamSession session = new StreamSession(emitter);
+
+        ChatDTO.PromptResult prompt;
+        Message userMessage;
+        try {
+            prompt = chatService.persistPrompt(chatId, userId, content);
+            userMessage = chatService.awaitDurable(prompt.getUserMessage());
+        } catch (BusinessException e) {
+            log.error("流式发送消息业务异常: {}", e.getMessage());
+            session.fail(e.getMessage());
+            return emitter;
+        }
+
+        Map<String, Object> start = new HashMap<>();
+        start.put("userMessageId", userMessage.getId());
+        session.send("start", start);
+
+        try {
+            chatService.streamAIResponse(chatId, prompt.getAiType(), content)
+                    .subscribe(new ReplySubscriber(session, chatId, userId));
+        } catch (BusinessException e) {
+            log.error("流式生成业务异常: {}", e.getMessage());
+            session.fail(e.getMessage());
+        }
+        return emitter;
+    }
+
+    /**
+     * 把引擎输出的片段转发为SSE事件，流结束后保存完整回复
+     */
+    private class ReplySubscriber implements Flow.Subscriber<String> {
+
+        private final StreamSession session;
+        private final Long chatId;
+        private final Long userId;
+        private final StringBuilder reply = new StringBuilder();
+        private Flow.Subscription subscription;
+
+        ReplySubscriber(StreamSession session, Long chatId, Long userId) {
+            this.session = session;
+            this.chatId = chatId;
+            this.userId = userId;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(String token) {
+            reply.append(token);
+            Map<String, Object> data = new HashMap<>();
+            data.put("content", token);
+            session.send("token", data);
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            log.error("流式生成失败: chatId={}, error={}", chatId, throwable.getMessage());
+            session.fail(AiEngineRegistry.describeFailure(throwable));
+        }
+
+        @Override
+        public void onComplete() {
+            try {
+                String aiResponse = reply.toString();
+                Message aiMessage = chatService.awaitDurable(chatService.persistReply(chatId, userId, aiResponse));
+
+                Map<String, Object> done = new HashMap<>();
+                done.put("messageId", aiMessage.getId());
+                done.put("response", aiResponse);
+                session.send("done", done);
+                session.complete();
+            } catch (BusinessException e) {
+                log.error("保存流式回复业务异常: {}", e.getMessage());
+                session.fail(e.getMessage());
+            } catch (Exception e) {
+                log.error("保存流式回复系统异常: ", e);
+                session.fail("生成回复失败");
+            }
+        }
+    }
+
+    /**
+     * 单个SSE连接；客户端断开后停止推送，但不中断生成
+     */
+    private static class StreamSession {
+
+        private final SseEmitter emitter;
+        private volatile boolean open = true;
+
+        StreamSession(SseEmitter emitter) {
+            this.emitter = emitter;
+            emitter.onCompletion(() -> open = false);
+            emitter.onTimeout(() -> open = false);
+            emitter.onError(e -> open = false);
+        }
+
+        void send(String event, Object data) {
+            if (!open) {
+                return;
+            }
+            try {
+                emitter.send(SseEmitter.event().name(event).data(data));
+            } catch (IOException | IllegalStateException e) {
+                open = false;
+                log.debug("SSE客户端已断开: {}", e.getMessage());
+            }
+        }
+
+        void complete() {
+            if (open) {
+                emitter.complete();
+            }
+        }
+
+        void fail(String message) {
+            Map<String, Object> data = new HashMap<>();
+            data.put("success", false);
+            data.put("error", message);
+            send("error", data);
+            complete();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.aiplatform.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 用户数据流式导出
+ *
+ * 通过一条 chats LEFT JOIN messages 查询以只进游标逐行读取，边读边用 Jackson 流式写出，
+ * 内存占用与账号数据量无关。支持整体 JSON（与旧接口结构一致）和逐行 NDJSON 两种格式。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DataExportService {
+
+    private static final String EXPORT_SQL =
+            "SELECT c.id AS chat_id, c.title, c.ai_type, c.created_at AS chat_created_at, c.last_activity, " +
+            "c.is_favorite, c.is_protected, m.id AS message_id, m.role, m.content, m.created_at AS message_created_at " +
+            "FROM chats c LEFT JOIN messages m ON m.chat_id = c.id " +
+            "WHERE c.user_id = ? " +
+            "ORDER BY c.last_activity DESC, c.id, m.created_at, m.id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.data.export.fetch-size:500}")
+    private int fetchSize;
+
+    public enum Format {
+        json, ndjson
+    }
+
+    /**
+     * 构建导出响应体，实际查询在写出响应时执行
+     */
+    public StreamingResponseBody export(Long userId, String email, Format format, boolean gzip) {
+        return outputStream -> {
+            long startedAt = System.currentTimeMillis();
+            OutputStream out = gzip ? new GZIPOutputStream(outputStream, 8192) : outputStream;
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+                // 响应流由容器负责关闭
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                ExportWriter writer = format == Format.ndjson
+                        ? new NdjsonWriter(generator)
+                        : new JsonWriter(generator);
+                writer.begin(email);
+                streamRows(userId, writer);
+                writer.end();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (out instanceof GZIPOutputStream gzipStream) {
+                gzipStream.finish();
+            }
+            log.info("数据导出完成: userId={}, format={}, gzip={}, elapsedMs={}",
+                    userId, format, gzip, System.currentTimeMillis() - startedAt);
+        };
+    }
+
+    private void streamRows(Long userId, ExportWriter writer) {
+        jdbcTemplate.query(connection -> prepareCursor(connection, userId), resultSet -> {
+            try {
+                Long chatId = resultSet.getLong("chat_id");
+                if (!chatId.equals(writer.currentChatId)) {
+                    writer.chat(resultSet, chatId);
+                }
+                resultSet.getLong("message_id");
+                if (!resultSet.wasNull()) {
+                    writer.message(resultSet, chatId);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private PreparedStatement prepareCursor(Connection connection, Long userId) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(EXPORT_SQL,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        // MySQL 驱动只有在 fetchSize 为 Integer.MIN_VALUE 时才逐行流式读取，否则会把结果集整个读入内存
+        boolean mysql = connection.getMetaData().getDatabaseProductName().toLowerCase().contains("mysql");
+        statement.setFetchSize(mysql ? Integer.MIN_VALUE : fetchSize);
+        statement.setLong(1, userId);
+        return statement;
+    }
+
+    private static String timestamp(ResultSet resultSet, String column) throws SQLException {
+        LocalDateTime value = resultSet.getObject(column, LocalDateTime.class);
+        return value != null ? value.toString() : null;
+    }
+
+    /**
+     * 按行写出导出内容；行按聊天分组有序到达
+     */
+    private abstract static class ExportWriter {
+
+        protected final JsonGenerator generator;
+        protected Long currentChatId;
+        protected long totalChats;
+        protected long totalMessages;
+
+        ExportWriter(JsonGenerator generator) {
+            this.generator = generator;
+        }
+
+        abstract void begin(String email) throws IOException;
+
+        abstract void chat(ResultSet row, Long chatId) throws IOException, SQLException;
+
+        abstract void message(ResultSet row, Long chatId) throws IOException, SQLException;
+
+        abstract void end() throws IOException;
+
+        protected void writeChatFields(ResultSet row, Long chatId) throws IOException, SQLException {
+            generator.writeNumberField("id", chatId);
+            generator.writeStringField("title", row.getString("title"));
+            generator.writeStringField("aiType", row.getString("ai_type"));
+            generator.writeStringField("createdAt", timestamp(row, "chat_created_at"));
+            generator.writeStringField("lastActivity", timestamp(row, "last_activity"));
+            generator.writeBooleanField("isFavorite", row.getBoolean("is_favorite"));
+            generator.writeBooleanField("isProtected", row.getBoolean("is_protected"));
+        }
+
+        protected void writeMessageFields(ResultSet row) throws IOException, SQLException {
+            generator.writeStringField("role", row.getString("role"));
+            generator.writeStringField("content", row.getString("content"));
+            generator.writeStringField("createdAt", timestamp(row, "message_created_at"));
+        }
+    }
+
+    /**
+     * 单个 JSON 文档，结构与原导出接口一致
+     */
+    private static class JsonWriter extends ExportWriter {
+
+        JsonWriter(JsonGenerator generator) {
+            super(generator);
+        }
+
+        @Override
+        void begin(String email) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("exportTime", LocalDateTime.now().toString());
+            generator.writeStringField("userEmail", email);
+            generator.writeArrayFieldStart("chats");
+        }
+
+        @Override
+        void chat(ResultSet row, Long chatId) throws IOException, SQLException {
+            if (currentChatId != null) {
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+            currentChatId = chatId;
+            totalChats++;
+            generator.writeStartObject();
+            writeChatFields(row, chatId);
+            generator.writeArrayFieldStart("messages");
+        }
+
+        @Override
+        void message(ResultSet row, Long chatId) throws IOException, SQLException {
+            totalMessages++;
+            generator.writeStartObject();
+            writeMessageFields(row);
+            generator.writeEndObject();
+        }
+
+        @Override
+        void end() throws IOException {
+            if (currentChatId != null) {
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeNumberField("totalChats", totalChats);
+            generator.writeNumberField("totalMessages", totalMessages);
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * 每行一个 JSON 对象：export 头、chat、message（带 chatId），最后一行 summary
+     */
+    private static class NdjsonWriter extends ExportWriter {
+
+        NdjsonWriter(JsonGenerator generator) {
+            super(generator);
+            // 行之间只用换行分隔，不使用 Jackson 默认的空格分隔符
+            generator.setRootValueSeparator(null);
+        }
+
+        @Override
+        void begin(String email) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("type", "export");
+            generator.writeStringField("exportTime", LocalDateTime.now().toString());
+            generator.writeStringField("userEmail", email);
+            endLine();
+        }
+
+        @Override
+        void chat(ResultSet row, Long chatId) throws IOException, SQLException {
+            currentChatId = chatId;
+            totalChats++;
+            generator.writeStartObject();
+            generator.writeStringField("type", "chat");
+            writeChatFields(row, chatId);
+            endLine();
+        }
+
+        @Override
+        void message(ResultSet row, Long chatId) throws IOException, SQLException {
+            totalMessages++;
+            generator.writeStartObject();
+            generator.writeStringField("type", "message");
+            generator.writeNumberField("chatId", chatId);
+            writeMessageFields(row);
+            endLine();
+        }
+
+        @Override
+        void end() throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("type", "summary");
+            generator.writeNumberField("totalChats", totalChats);
+            generator.writeNumberField("totalMessages", totalMessages);
+            endLine();
+        }
+
+        private void endLine() throws IOException {
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+    }
+}
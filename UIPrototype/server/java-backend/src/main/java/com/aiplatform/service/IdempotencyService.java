@@ -0,0 +1,108 @@
+package com.aiplatform.service;
+
+import com.aiplatform.exception.BusinessException;
+import com.aiplatform.util.TtlCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 按 Idempotency-Key 请求头去重
+ *
+ * 同一用户、同一个键的请求只执行一次：首个请求把进行中的结果放入有界的 TTL 缓存，
+ * 并发的重复请求等待它完成，之后的重试直接返回缓存的响应。只缓存成功响应，失败时移除，允许客户端重试。
+ * 同一个键用于不同请求内容时拒绝。
+ */
+@Service
+@Slf4j
+public class IdempotencyService {
+
+    private static final int MAX_KEY_LENGTH = 128;
+
+    private final TtlCache<String, InFlight> results;
+    private final long waitTimeoutMs;
+    private final Counter replays;
+
+    /**
+     * 一个键对应的请求：请求内容摘要和（进行中或已完成的）响应
+     */
+    private record InFlight(String fingerprint, CompletableFuture<ResponseEntity<Map<String, Object>>> response) {
+    }
+
+    public IdempotencyService(MeterRegistry meterRegistry,
+                              @Value("${app.idempotency.max-keys:10000}") int maxKeys,
+                              @Value("${app.idempotency.ttl-minutes:60}") long ttlMinutes,
+                              @Value("${app.idempotency.wait-timeout-ms:120000}") long waitTimeoutMs) {
+        this.results = new TtlCache<>("idempotency", maxKeys, Duration.ofMinutes(ttlMinutes), meterRegistry);
+        this.waitTimeoutMs = waitTimeoutMs;
+        this.replays = Counter.builder("idempotency.replays").register(meterRegistry);
+    }
+
+    /**
+     * 执行 action，或返回同一个键已有（进行中则等待）的响应；key 为空时直接执行
+     *
+     * @param request 请求内容（如路径与请求体），用于识别键被用于不同请求
+     */
+    public ResponseEntity<Map<String, Object>> execute(Long userId, String key, String request,
+                                                       Supplier<ResponseEntity<Map<String, Object>>> action) {
+        if (key == null || key.isBlank()) {
+            return action.get();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            throw new BusinessException("Idempotency-Key 长度不能超过 " + MAX_KEY_LENGTH);
+        }
+
+        String cacheKey = userId + ":" + key;
+        String fingerprint = DigestUtils.md5DigestAsHex(request.getBytes(StandardCharsets.UTF_8));
+        InFlight mine = new InFlight(fingerprint, new CompletableFuture<>());
+        InFlight existing = results.putIfAbsent(cacheKey, mine);
+        if (existing != null) {
+            if (!existing.fingerprint().equals(fingerprint)) {
+                throw new BusinessException("Idempotency-Key 已用于其他请求");
+            }
+            replays.increment();
+            log.info("重复请求，返回原请求的响应: userId={}, key={}", userId, key);
+            return await(existing);
+        }
+
+        ResponseEntity<Map<String, Object>> response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            results.invalidate(cacheKey);
+            mine.response().completeExceptionally(e);
+            throw e;
+        }
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            results.invalidate(cacheKey);
+        }
+        mine.response().complete(response);
+        return response;
+    }
+
+    private ResponseEntity<Map<String, Object>> await(InFlight inFlight) {
+        try {
+            return inFlight.response().get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new BusinessException("相同请求仍在处理中，请稍后重试");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException("请求已中断");
+        }
+    }
+}
@@ -0,0 +1,448 @@
+package com.aiplatform.service;
+
+import com.aiplatform.entity.Message;
+import com.aiplatform.exception.BusinessException;
+import com.aiplatform.search.MessageSearchService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 聊天消息组提交（可选，app.chat.group-commit.enabled）
+ *
+ * 开启后消息不再逐条插入：调用方事务提交后把消息放入内存环形缓冲区，由单个写入线程每隔几毫秒或攒够 N 条
+ * 取出一批，先追加到本地日志文件并 fsync（此时返回给调用方的 future 完成），再在一个事务中批量写入数据库，
+ * 写入成功后清空日志。启动时重放日志中的消息，已确认的消息不会因进程崩溃而丢失。
+ * 已确认的批次写入数据库失败时留在内存中重试，成功前不再取新批次，日志不会持续增长；停机时未写入的消息留在日志中。
+ * 缓冲区已满或写入线程已停止时直接拒绝（计数 chat.group_commit.rejected），提交发生在调用方事务的 afterCommit 中，不能阻塞或访问数据库。
+ * 确认之后、写入之前所属聊天被删除的消息无法插入，随聊天一起丢弃（计数 chat.group_commit.dropped）。
+ *
+ * 消息计数和用户统计不在调用方事务中累加，而是在插入消息的同一事务中更新：涉及的聊天按 messages 表实际行数重算
+ * message_count，因此被拒绝、丢弃或在确认前随进程崩溃丢失的消息都不会被计入，重复写入也不会重复计数；
+ * 用户统计按批累加，重放日志后按明细重新计算，运行期间极少数的重复写入由定时校准修正。
+ * 消息ID在调用方事务中预先分配，重复写入按主键忽略；新消息可能在确认后几毫秒才出现在查询结果中。
+ */
+@Service
+@Slf4j
+public class MessageWriteBuffer {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO messages (id, chat_id, role, content, created_at) VALUES (?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE id = id";
+
+    private static final String RECOUNT_SQL =
+            "UPDATE chats SET message_count = (SELECT COUNT(*) FROM messages WHERE chat_id = ?) WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+    private final MessageSearchService messageSearchService;
+    private final UserStatsService userStatsService;
+
+    private final boolean enabled;
+    private final Path journalFile;
+    private final BlockingQueue<Entry> buffer;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long retryDelayMs;
+    private final long awaitTimeoutMs;
+
+    private final DistributionSummary batchSizes;
+    private final Counter dropped;
+    private final Counter rejected;
+
+    private FileChannel journal;
+    private Thread writer;
+    private volatile boolean running;
+    // 已确认（已写入日志）但尚未写入数据库的消息，只由写入线程访问
+    private final List<Entry> unwritten = new ArrayList<>();
+
+    /**
+     * 一条待写入的消息；userId 用于写入后更新检索索引
+     */
+    private record Entry(Long userId, Message message, CompletableFuture<Message> durable) {
+    }
+
+    public MessageWriteBuffer(JdbcTemplate jdbcTemplate,
+                              PlatformTransactionManager transactionManager,
+                              EntityManager entityManager,
+                              MessageSearchService messageSearchService,
+                              UserStatsService userStatsService,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.chat.group-commit.enabled:false}") boolean enabled,
+                              @Value("${app.chat.group-commit.journal-file:data/message-journal.log}") String journalFile,
+                              @Value("${app.chat.group-commit.capacity:4096}") int capacity,
+                              @Value("${app.chat.group-commit.batch-size:200}") int batchSize,
+                              @Value("${app.chat.group-commit.flush-interval-ms:5}") long flushIntervalMs,
+                              @Value("${app.chat.group-commit.retry-delay-ms:1000}") long retryDelayMs,
+                              @Value("${app.chat.group-commit.await-timeout-ms:5000}") long awaitTimeoutMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        // 写入线程和启动重放都不在调用方事务中，使用独立事务
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.entityManager = entityManager;
+        this.messageSearchService = messageSearchService;
+        this.userStatsService = userStatsService;
+        this.enabled = enabled;
+        this.journalFile = Paths.get(journalFile);
+        this.buffer = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMs = Math.max(1, flushIntervalMs);
+        this.retryDelayMs = retryDelayMs;
+        this.awaitTimeoutMs = awaitTimeoutMs;
+        this.batchSizes = DistributionSummary.builder("chat.group_commit.batch.size").register(meterRegistry);
+        this.dropped = Counter.builder("chat.group_commit.dropped").register(meterRegistry);
+        this.rejected = Counter.builder("chat.group_commit.rejected").register(meterRegistry);
+        Gauge.builder("chat.group_commit.pending", buffer, BlockingQueue::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Path parent = journalFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        journal = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        replay();
+        running = true;
+        writer = new Thread(this::runWriter, "message-group-commit");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("消息组提交已开启: journal={}, batchSize={}, flushIntervalMs={}",
+                journalFile, batchSize, flushIntervalMs);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException, IOException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+        journal.close();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 调用方等待消息确认的最长时间
+     */
+    public long getAwaitTimeoutMs() {
+        return awaitTimeoutMs;
+    }
+
+    /**
+     * 在当前事务中为消息预先分配ID和创建时间（与直接保存时使用同一个主键生成器）
+     */
+    public void prepare(Message message) {
+        SharedSessionContractImplementor session = entityManager.unwrap(SharedSessionContractImplementor.class);
+        IdentifierGenerator generator = (IdentifierGenerator) session
+                .getEntityPersister(Message.class.getName(), message)
+                .getGenerator();
+        message.setId((Long) generator.generate(session, message));
+        message.setCreatedAt(LocalDateTime.now());
+    }
+
+    /**
+     * 提交一条已分配ID的消息，返回的 future 在消息写入日志（或数据库）后完成；
+     * 不阻塞：缓冲区已满或写入线程已停止（停机中）时返回失败的 future，消息不会写入也不会计数
+     */
+    public CompletableFuture<Message> submit(Long userId, Message message) {
+        Entry entry = new Entry(userId, message, new CompletableFuture<>());
+        // 放入期间写入线程可能已退出：仍能从缓冲区取回时说明没有被处理，按停机拒绝
+        if (running && buffer.offer(entry) && (running || !buffer.remove(entry))) {
+            return entry.durable();
+        }
+        rejected.increment();
+        log.warn("消息写入缓冲区已满或已停止，拒绝消息: messageId={}, chatId={}", message.getId(), message.getChatId());
+        entry.durable().completeExceptionally(new BusinessException("消息保存繁忙，请稍后重试"));
+        return entry.durable();
+    }
+
+    private void runWriter() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        while (running || !buffer.isEmpty()) {
+            try {
+                if (!unwritten.isEmpty()) {
+                    if (!running) {
+                        break;
+                    }
+                    retryUnwritten();
+                    continue;
+                }
+                Entry first = buffer.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    Entry next = buffer.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                log.error("消息组提交失败: size={}, error={}", batch.size(), e.getMessage());
+                batch.forEach(entry -> entry.durable().completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+        journalRemaining();
+    }
+
+    private void flush(List<Entry> batch) {
+        batchSizes.record(batch.size());
+        boolean journaled = appendToJournal(batch);
+        if (journaled) {
+            batch.forEach(entry -> entry.durable().complete(entry.message()));
+        }
+        try {
+            writeToDatabase(batch);
+        } catch (RuntimeException e) {
+            if (!journaled) {
+                throw e;
+            }
+            // 已确认的消息不能丢：保留日志，重试成功前不取新批次
+            unwritten.addAll(batch);
+            log.error("消息组提交失败，{}ms 后重试: size={}, error={}", retryDelayMs, batch.size(), e.getMessage());
+            return;
+        }
+        if (!journaled) {
+            batch.forEach(entry -> entry.durable().complete(entry.message()));
+        }
+        written(batch);
+    }
+
+    private void retryUnwritten() throws InterruptedException {
+        try {
+            writeToDatabase(unwritten);
+        } catch (RuntimeException e) {
+            log.error("消息组提交重试失败，{}ms 后重试: size={}, error={}", retryDelayMs, unwritten.size(), e.getMessage());
+            Thread.sleep(retryDelayMs);
+            return;
+        }
+        written(unwritten);
+        unwritten.clear();
+    }
+
+    /**
+     * 日志中的消息都已写入数据库：更新检索索引并清空日志
+     */
+    private void written(List<Entry> entries) {
+        entries.forEach(entry -> messageSearchService.onMessageSaved(entry.userId(), entry.message()));
+        truncateJournal();
+    }
+
+    /**
+     * 写入线程退出时仍在缓冲区中的消息写入日志，下次启动时重放
+     */
+    private void journalRemaining() {
+        List<Entry> remaining = new ArrayList<>();
+        buffer.drainTo(remaining);
+        if (remaining.isEmpty()) {
+            return;
+        }
+        if (appendToJournal(remaining)) {
+            remaining.forEach(entry -> entry.durable().complete(entry.message()));
+        } else {
+            IllegalStateException error = new IllegalStateException("消息写入已停止");
+            remaining.forEach(entry -> entry.durable().completeExceptionally(error));
+        }
+        log.info("停机时尚未写入数据库的消息留在日志中: messages={}", remaining.size() + unwritten.size());
+    }
+
+    /**
+     * 追加一批消息并 fsync；写入失败时返回 false，由调用方等数据库提交后再确认
+     */
+    private boolean appendToJournal(List<Entry> batch) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (Entry entry : batch) {
+                Message message = entry.message();
+                out.writeLong(entry.userId());
+                out.writeLong(message.getId());
+                out.writeLong(message.getChatId());
+                out.writeUTF(message.getRole().name());
+                out.writeUTF(message.getCreatedAt().toString());
+                byte[] content = message.getContent().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(content.length);
+                out.write(content);
+            }
+            ByteBuffer data = ByteBuffer.wrap(bytes.toByteArray());
+            while (data.hasRemaining()) {
+                journal.write(data);
+            }
+            journal.force(false);
+            return true;
+        } catch (IOException e) {
+            log.warn("写入消息日志失败，改为等待数据库提交: error={}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void truncateJournal() {
+        try {
+            journal.truncate(0);
+            journal.position(0);
+        } catch (IOException e) {
+            log.warn("清空消息日志失败: error={}", e.getMessage());
+        }
+    }
+
+    /**
+     * 批量插入并在同一事务中更新计数；违反约束（聊天已被删除）时逐条插入并丢弃失败的消息，数据库不可用时重试直到停机
+     */
+    private void writeToDatabase(List<Entry> batch) {
+        writeToDatabase(batch, true);
+    }
+
+    private void writeToDatabase(List<Entry> batch, boolean applyStats) {
+        while (true) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    jdbcTemplate.batchUpdate(INSERT_SQL, batch.stream().map(entry -> row(entry.message())).toList());
+                    countWritten(batch, applyStats);
+                });
+                return;
+            } catch (DataIntegrityViolationException e) {
+                insertEach(batch, applyStats);
+                return;
+            } catch (DataAccessException e) {
+                if (!running || Thread.currentThread() != writer) {
+                    throw e;
+                }
+                log.warn("消息批量写入失败，{}ms 后重试: size={}, error={}", retryDelayMs, batch.size(), e.getMessage());
+                try {
+                    Thread.sleep(retryDelayMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void insertEach(List<Entry> batch, boolean applyStats) {
+        for (Entry entry : batch) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    jdbcTemplate.update(INSERT_SQL, row(entry.message()));
+                    countWritten(List.of(entry), applyStats);
+                });
+            } catch (DataIntegrityViolationException e) {
+                dropped.increment();
+                log.warn("丢弃无法写入的消息: messageId={}, chatId={}, error={}",
+                        entry.message().getId(), entry.message().getChatId(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 按实际行数重算涉及聊天的消息计数，并按用户累加统计
+     */
+    private void countWritten(List<Entry> entries, boolean applyStats) {
+        jdbcTemplate.batchUpdate(RECOUNT_SQL, entries.stream()
+                .map(entry -> entry.message().getChatId())
+                .distinct()
+                .map(chatId -> new Object[]{chatId, chatId})
+                .toList());
+        if (!applyStats) {
+            return;
+        }
+        Map<Long, long[]> perUser = new HashMap<>();
+        for (Entry entry : entries) {
+            long[] totals = perUser.computeIfAbsent(entry.userId(), id -> new long[2]);
+            totals[0]++;
+            totals[1] += entry.message().getContent().getBytes(StandardCharsets.UTF_8).length;
+        }
+        perUser.forEach((userId, totals) -> userStatsService.onMessagesSaved(userId, totals[0], totals[1]));
+    }
+
+    private void replay() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalFile)))) {
+            while (true) {
+                Message message = new Message();
+                long userId = in.readLong();
+                message.setId(in.readLong());
+                message.setChatId(in.readLong());
+                message.setRole(Message.MessageRole.valueOf(in.readUTF()));
+                message.setCreatedAt(LocalDateTime.parse(in.readUTF()));
+                int length = in.readInt();
+                if (length < 0 || length > in.available()) {
+                    break;
+                }
+                message.setContent(new String(in.readNBytes(length), StandardCharsets.UTF_8));
+                entries.add(new Entry(userId, message, new CompletableFuture<>()));
+            }
+        } catch (EOFException e) {
+            // 最后一条记录未写完整：尚未 fsync，也未向调用方确认
+        }
+        if (!entries.isEmpty()) {
+            for (int from = 0; from < entries.size(); from += batchSize) {
+                writeToDatabase(entries.subList(from, Math.min(entries.size(), from + batchSize)), false);
+            }
+            // 日志中的消息可能已经写入过，统计不按增量累加，按明细重新计算
+            entries.stream().map(Entry::userId).distinct().forEach(userStatsService::recalculate);
+            log.info("已重放消息日志: messages={}", entries.size());
+        }
+        truncateJournal();
+    }
+
+    private static Object[] row(Message message) {
+        return new Object[]{message.getId(), message.getChatId(), message.getRole().name(),
+                message.getContent(), message.getCreatedAt()};
+    }
+}
@@ -0,0 +1,174 @@
+package com.aiplatform.service;
+
+import com.aiplatform.dto.ChatDTO;
+import com.aiplatform.entity.UserSettings;
+import com.aiplatform.repository.UserSettingsRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按用户设置定时执行数据保留策略
+ *
+ * 每种清理频率对应一个定时任务，按 id 分批读取开启了自动清理的用户设置，
+ * 多实例部署时按 userId 取模分片，各实例只处理自己的分片。逐个用户先删除超过保留天数的聊天，
+ * 再删除超出 maxChats 的最旧非保护聊天；用户之间按 users-per-second 限速，避免集中占用数据库。
+ * 限速在定时任务线程上休眠，依赖 spring.task.scheduling.pool.size 为其他定时任务留出线程。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RetentionScheduler {
+
+    private final UserSettingsRepository userSettingsRepository;
+    private final ChatPurgeService chatPurgeService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.data.retention.default-days:30}")
+    private int defaultRetentionDays;
+
+    @Value("${app.data.retention.max-days:365}")
+    private int maxRetentionDays;
+
+    @Value("${app.data.retention.batch-size:200}")
+    private int batchSize;
+
+    @Value("${app.data.retention.users-per-second:20}")
+    private double usersPerSecond;
+
+    @Value("${app.data.retention.shard-count:1}")
+    private long shardCount;
+
+    @Value("${app.data.retention.shard-index:0}")
+    private long shardIndex;
+
+    @Scheduled(cron = "${app.data.retention.schedule.daily:0 0 3 * * *}")
+    public void runDaily() {
+        run(UserSettings.CleanupFrequency.daily);
+    }
+
+    @Scheduled(cron = "${app.data.retention.schedule.weekly:0 30 3 * * MON}")
+    public void runWeekly() {
+        run(UserSettings.CleanupFrequency.weekly);
+    }
+
+    @Scheduled(cron = "${app.data.retention.schedule.monthly:0 0 4 1 * *}")
+    public void runMonthly() {
+        run(UserSettings.CleanupFrequency.monthly);
+    }
+
+    /**
+     * 执行一轮指定频率的清理
+     */
+    public RunResult run(UserSettings.CleanupFrequency frequency) {
+        long startedAt = System.nanoTime();
+        RunResult result = new RunResult();
+        long intervalNanos = usersPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / usersPerSecond) : 0;
+        long nextSlot = System.nanoTime();
+        long afterId = 0;
+
+        log.info("开始执行数据保留清理: frequency={}, shard={}/{}", frequency, shardIndex, shardCount);
+        scan:
+        while (true) {
+            List<UserSettings> batch = userSettingsRepository.findForCleanup(
+                    frequency, afterId, shardCount, shardIndex, PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                break;
+            }
+            for (UserSettings settings : batch) {
+                afterId = settings.getId();
+                try {
+                    nextSlot = pace(nextSlot, intervalNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.warn("数据保留清理被中断: frequency={}", frequency);
+                    break scan;
+                }
+                cleanupUser(settings, result);
+            }
+        }
+
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - startedAt);
+        record(frequency, result, elapsed);
+        log.info("数据保留清理完成: frequency={}, usersScanned={}, usersFailed={}, deletedChats={}, deletedMessages={}, elapsedMs={}",
+                frequency, result.usersScanned, result.usersFailed, result.deletedChats, result.deletedMessages,
+                elapsed.toMillis());
+        return result;
+    }
+
+    private void cleanupUser(UserSettings settings, RunResult result) {
+        Long userId = settings.getUserId();
+        result.usersScanned++;
+        try {
+            int retentionDays = settings.getRetentionDays() != null ? settings.getRetentionDays() : defaultRetentionDays;
+            retentionDays = Math.min(Math.max(retentionDays, 1), maxRetentionDays);
+            ChatDTO.PurgeResult expired = chatPurgeService.purgeExpired(userId, LocalDateTime.now().minusDays(retentionDays));
+            result.add(expired);
+
+            if (settings.getMaxChats() != null) {
+                result.add(chatPurgeService.purgeOverflow(userId, settings.getMaxChats()));
+            }
+        } catch (Exception e) {
+            result.usersFailed++;
+            log.error("用户 {} 数据保留清理失败: {}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * 等待到下一个处理时间片，返回再下一个时间片
+     */
+    private static long pace(long nextSlot, long intervalNanos) throws InterruptedException {
+        if (intervalNanos <= 0) {
+            return nextSlot;
+        }
+        long waitNanos = nextSlot - System.nanoTime();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+            return nextSlot + intervalNanos;
+        }
+        // 落后时不补发，从当前时间重新计时
+        return System.nanoTime() + intervalNanos;
+    }
+
+    private void record(UserSettings.CleanupFrequency frequency, RunResult result, Duration elapsed) {
+        String tag = frequency.name();
+        Counter.builder("retention.users.scanned").tag("frequency", tag).register(meterRegistry)
+                .increment(result.usersScanned);
+        Counter.builder("retention.users.failed").tag("frequency", tag).register(meterRegistry)
+                .increment(result.usersFailed);
+        Counter.builder("retention.chats.purged").tag("frequency", tag).register(meterRegistry)
+                .increment(result.deletedChats);
+        Counter.builder("retention.messages.purged").tag("frequency", tag).register(meterRegistry)
+                .increment(result.deletedMessages);
+        Timer.builder("retention.run.duration").tag("frequency", tag).register(meterRegistry)
+                .record(elapsed);
+    }
+
+    /**
+     * 单轮清理统计
+     */
+    @Getter
+    public static class RunResult {
+        private long usersScanned;
+        private long usersFailed;
+        private long deletedChats;
+        private long deletedMessages;
+
+        private void add(ChatDTO.PurgeResult purge) {
+            deletedChats += purge.getDeletedChats();
+            deletedMessages += purge.getDeletedMessages();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.aiplatform.service;
+
+import com.aiplatform.dto.SupportDTO;
+import com.aiplatform.entity.SupportChat;
+import com.aiplatform.entity.SupportReadMark;
+import com.aiplatform.repository.SupportChatRepository;
+import com.aiplatform.repository.SupportReadMarkRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 客服工作台
+ *
+ * 客户列表由一条聚合查询分页生成（客户信息、最后一条消息预览、未读数量），不加载对话内容；
+ * 完整对话只在打开某个客户时按页读取。
+ * 已读状态由双方各自的已读水位（support_read_marks）决定；尚无水位的对话沿用消息上的 is_read 标记。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SupportInboxService {
+
+    private static final String GROUPED_CUSTOMERS_SQL =
+            "SELECT sc.user_id, MAX(sc.id) AS last_id, " +
+            "SUM(CASE WHEN sc.sender_type = 'USER' AND " +
+            "((r.last_read_id IS NULL AND sc.is_read = false) OR sc.id > r.last_read_id) THEN 1 ELSE 0 END) AS unread " +
+            "FROM support_chats sc " +
+            "LEFT JOIN support_read_marks r ON r.customer_id = sc.user_id AND r.reader_type = 'SUPPORT' " +
+            "GROUP BY sc.user_id " +
+            "HAVING SUM(CASE WHEN sc.sender_type = 'USER' THEN 1 ELSE 0 END) > 0";
+
+    private static final String UNREAD_COUNT_SQL =
+            "SELECT COUNT(*) FROM support_chats sc " +
+            "LEFT JOIN support_read_marks r ON r.customer_id = sc.user_id AND r.reader_type = :readerType " +
+            "WHERE sc.user_id = :customerId AND sc.sender_type <> :readerType " +
+            "AND ((r.last_read_id IS NULL AND sc.is_read = false) OR sc.id > r.last_read_id)";
+
+    private static final String INSERT_READ_MARK_SQL =
+            "INSERT INTO support_read_marks (customer_id, reader_type, last_read_id, updated_at) " +
+            "VALUES (:customerId, :readerType, 0, :now) ON DUPLICATE KEY UPDATE customer_id = customer_id";
+
+    private static final String INBOX_SQL =
+            "SELECT s.user_id, u.username, u.email, s.unread, m.created_at, " +
+            "SUBSTRING(m.content, 1, :previewLength) AS preview " +
+            "FROM (" + GROUPED_CUSTOMERS_SQL + ") s " +
+            "JOIN users u ON u.id = s.user_id " +
+            "JOIN support_chats m ON m.id = s.last_id " +
+            "ORDER BY s.last_id DESC LIMIT :limit OFFSET :offset";
+
+    private static final String INBOX_COUNT_SQL =
+            "SELECT COUNT(*) FROM (" + GROUPED_CUSTOMERS_SQL + ") s JOIN users u ON u.id = s.user_id";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final SupportChatRepository supportChatRepository;
+    private final SupportReadMarkRepository supportReadMarkRepository;
+
+    @Value("${app.support.preview-length:200}")
+    private int previewLength;
+
+    @Value("${app.support.default-page-size:20}")
+    private int defaultPageSize;
+
+    @Value("${app.support.max-page-size:100}")
+    private int maxPageSize;
+
+    /**
+     * 按最后一条消息倒序分页返回客户对话列表
+     *
+     * 多取一行判断是否还有下一页；客户总数需要整表聚合，只在第一页计算，其余页 total 为 null。
+     */
+    public SupportDTO.InboxPage getInbox(int page, Integer limit) {
+        int size = pageSize(limit);
+        page = Math.max(page, 0);
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("previewLength", previewLength)
+                .addValue("limit", size + 1)
+                .addValue("offset", (long) page * size);
+        List<SupportDTO.InboxItem> customers = jdbcTemplate.query(INBOX_SQL, params, (resultSet, rowNum) -> {
+            long userId = resultSet.getLong("user_id");
+            return new SupportDTO.InboxItem(
+                    userId,
+                    userId,
+                    resultSet.getString("username"),
+                    resultSet.getString("email"),
+                    resultSet.getString("preview"),
+                    resultSet.getObject("created_at", LocalDateTime.class),
+                    resultSet.getLong("unread"));
+        });
+        boolean hasMore = customers.size() > size;
+        if (hasMore) {
+            customers = customers.subList(0, size);
+        }
+        Long total = page == 0
+                ? jdbcTemplate.queryForObject(INBOX_COUNT_SQL, new MapSqlParameterSource(), Long.class)
+                : null;
+        return new SupportDTO.InboxPage(customers, page, size, total, hasMore);
+    }
+
+    /**
+     * 读取客户对话中 beforeId 之前（为空时为最新）的一页消息，按时间正序返回
+     */
+    @Transactional(readOnly = true)
+    public SupportDTO.TranscriptPage getTranscript(Long customerId, Long beforeId, Integer limit) {
+        int size = pageSize(limit);
+        Long customerMark = lastReadId(customerId, SupportChat.SenderType.USER);
+        Long supportMark = lastReadId(customerId, SupportChat.SenderType.SUPPORT);
+        List<SupportChat> newestFirst = supportChatRepository.findPageBefore(customerId, beforeId, PageRequest.of(0, size + 1));
+        boolean hasMore = newestFirst.size() > size;
+        List<SupportDTO.SupportMessage> messages = new ArrayList<>();
+        for (SupportChat chat : newestFirst.subList(0, Math.min(size, newestFirst.size()))) {
+            messages.add(toMessage(chat, isRead(chat, customerMark, supportMark)));
+        }
+        Collections.reverse(messages);
+        Long olderCursor = messages.isEmpty() ? null : messages.get(0).getId();
+        return new SupportDTO.TranscriptPage(customerId, messages, hasMore, olderCursor);
+    }
+
+    /**
+     * 把 readerType 一方的已读水位推进到 messageId，返回水位是否前进
+     *
+     * 水位已不低于 messageId 时不写数据库；否则一条条件 UPDATE，水位行不存在时先插入。
+     */
+    @Transactional
+    public boolean markRead(Long customerId, SupportChat.SenderType readerType, Long messageId) {
+        Long current = lastReadId(customerId, readerType);
+        if (current != null && messageId <= current) {
+            return false;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if (current == null) {
+            jdbcTemplate.update(INSERT_READ_MARK_SQL, new MapSqlParameterSource()
+                    .addValue("customerId", customerId)
+                    .addValue("readerType", readerType.name())
+                    .addValue("now", now));
+        }
+        return supportReadMarkRepository.advance(customerId, readerType, messageId, now) > 0;
+    }
+
+    /**
+     * 客户对话中最新一条消息的ID，没有消息时返回 null
+     */
+    public Long latestMessageId(Long customerId) {
+        List<SupportChat> latest = supportChatRepository.findPageBefore(customerId, null, PageRequest.of(0, 1));
+        return latest.isEmpty() ? null : latest.get(0).getId();
+    }
+
+    /**
+     * readerType 一方的已读水位，尚未记录时返回 null
+     */
+    public Long lastReadId(Long customerId, SupportChat.SenderType readerType) {
+        return supportReadMarkRepository.findByCustomerIdAndReaderType(customerId, readerType)
+                .map(SupportReadMark::getLastReadId)
+                .orElse(null);
+    }
+
+    /**
+     * readerType 一方在该客户对话中的未读消息数量
+     */
+    public long unreadCount(Long customerId, SupportChat.SenderType readerType) {
+        Long count = jdbcTemplate.queryForObject(UNREAD_COUNT_SQL, new MapSqlParameterSource()
+                .addValue("customerId", customerId)
+                .addValue("readerType", readerType.name()), Long.class);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * 消息是否已被对方读过：客户消息看客服水位，客服消息看客户水位
+     */
+    public static boolean isRead(SupportChat chat, Long customerMark, Long supportMark) {
+        Long mark = chat.isFromUser() ? supportMark : customerMark;
+        if (mark == null) {
+            return Boolean.TRUE.equals(chat.getIsRead());
+        }
+        return chat.getId() <= mark;
+    }
+
+    public static SupportDTO.SupportMessage toMessage(SupportChat chat, boolean read) {
+        return new SupportDTO.SupportMessage(
+                chat.getId(),
+                chat.getContent(),
+                chat.isFromUser(),
+                chat.getSenderType().name(),
+                chat.getCreatedAt(),
+                read);
+    }
+
+    private int pageSize(Integer limit) {
+        return limit == null || limit <= 0 ? defaultPageSize : Math.min(limit, maxPageSize);
+    }
+}
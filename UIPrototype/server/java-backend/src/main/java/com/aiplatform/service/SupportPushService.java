@@ -0,0 +1,350 @@
+package com.aiplatform.service;
+
+import com.aiplatform.config.AsyncConfig;
+import com.aiplatform.dto.SupportDTO;
+import com.aiplatform.entity.SupportChat;
+import com.aiplatform.repository.SupportChatRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 客服对话实时推送（SSE）
+ *
+ * 客户订阅自己的对话，客服订阅全部客户对话。事件：
+ * ready（连接建立，id 为当前最新消息ID）、message（新消息，id 为消息ID）、unread（未读数量变化）、
+ * reset（断线期间的消息过多，客户端应重新拉取列表）。
+ * 客户端重连时带上 Last-Event-ID，补发该 ID 之后的消息；定时发送心跳注释保持连接。
+ * 事件先放入每个连接自己的队列，由 push 线程池按顺序写出，提交事务的请求线程和定时任务线程不会被慢连接阻塞；
+ * 积压超过 max-pending 或线程池已满时断开该连接，客户端随后重连补发。
+ */
+@Service
+@Slf4j
+public class SupportPushService {
+
+    private final SupportChatRepository supportChatRepository;
+    private final SupportInboxService supportInboxService;
+    private final Executor pushExecutor;
+    private final Map<Long, Set<Subscriber>> customerSubscribers = new ConcurrentHashMap<>();
+    private final Set<Subscriber> supportSubscribers = ConcurrentHashMap.newKeySet();
+
+    @Value("${app.support.push.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    @Value("${app.support.push.reconnect-ms:3000}")
+    private long reconnectMs;
+
+    @Value("${app.support.push.replay-limit:200}")
+    private int replayLimit;
+
+    @Value("${app.support.push.max-pending:100}")
+    private int maxPending;
+
+    public SupportPushService(SupportChatRepository supportChatRepository,
+                              SupportInboxService supportInboxService,
+                              @Qualifier(AsyncConfig.PUSH_EXECUTOR) Executor pushExecutor,
+                              MeterRegistry meterRegistry) {
+        this.supportChatRepository = supportChatRepository;
+        this.supportInboxService = supportInboxService;
+        this.pushExecutor = pushExecutor;
+        Gauge.builder("support.push.connections", this, SupportPushService::connectionCount)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 客户订阅自己的客服对话
+     */
+    public SseEmitter subscribeCustomer(Long customerId, String lastEventId) {
+        Subscriber subscriber = new Subscriber(new SseEmitter(timeoutMs), customerId);
+        // 加入和移除都在映射的原子操作内完成，并发关闭最后一个连接时不会把集合摘走
+        subscriber.onClose(() -> customerSubscribers.computeIfPresent(customerId, (id, set) -> {
+            set.remove(subscriber);
+            return set.isEmpty() ? null : set;
+        }));
+        customerSubscribers.compute(customerId, (id, set) -> {
+            Set<Subscriber> subscribers = set != null ? set : ConcurrentHashMap.newKeySet();
+            subscribers.add(subscriber);
+            return subscribers;
+        });
+
+        Long afterId = parseEventId(lastEventId);
+        if (afterId == null) {
+            subscriber.ready(supportChatRepository.findMaxIdByUserId(customerId));
+        } else {
+            replay(subscriber, supportChatRepository.findByUserIdAndIdGreaterThanOrderByIdAsc(
+                    customerId, afterId, PageRequest.of(0, replayLimit + 1)),
+                    () -> supportChatRepository.findMaxIdByUserId(customerId));
+        }
+        subscriber.send("unread", new SupportDTO.UnreadUpdate(customerId,
+                supportInboxService.unreadCount(customerId, SupportChat.SenderType.USER)));
+        return subscriber.emitter;
+    }
+
+    /**
+     * 客服订阅全部客户对话
+     */
+    public SseEmitter subscribeSupport(String lastEventId) {
+        Subscriber subscriber = new Subscriber(new SseEmitter(timeoutMs), null);
+        supportSubscribers.add(subscriber);
+        subscriber.onClose(() -> supportSubscribers.remove(subscriber));
+
+        Long afterId = parseEventId(lastEventId);
+        if (afterId == null) {
+            subscriber.ready(supportChatRepository.findMaxId());
+        } else {
+            replay(subscriber, supportChatRepository.findByIdGreaterThanOrderByIdAsc(
+                    afterId, PageRequest.of(0, replayLimit + 1)),
+                    supportChatRepository::findMaxId);
+        }
+        return subscriber.emitter;
+    }
+
+    /**
+     * 新消息已保存：推送给该客户和全部客服，并更新接收方的未读数量
+     */
+    public void onMessageSaved(SupportChat chat) {
+        afterCommit(() -> {
+            if (!hasSubscribers(chat.getUserId())) {
+                return;
+            }
+            SupportDTO.MessageEvent event = toEvent(chat);
+            broadcast(chat.getUserId(), subscriber -> subscriber.sendMessage(chat.getId(), event));
+            if (chat.isFromUser()) {
+                pushUnread(chat.getUserId(), SupportChat.SenderType.SUPPORT);
+            } else {
+                pushUnread(chat.getUserId(), SupportChat.SenderType.USER);
+            }
+        });
+    }
+
+    /**
+     * readerType 一方的已读水位已推进：推送新的未读数量
+     */
+    public void onReadMarkChanged(Long customerId, SupportChat.SenderType readerType) {
+        afterCommit(() -> pushUnread(customerId, readerType));
+    }
+
+    @Scheduled(fixedRateString = "${app.support.push.heartbeat-ms:25000}")
+    public void heartbeat() {
+        customerSubscribers.values().forEach(subscribers -> subscribers.forEach(Subscriber::heartbeat));
+        supportSubscribers.forEach(Subscriber::heartbeat);
+    }
+
+    /**
+     * 停机时（Web 服务器停止之前）主动结束所有连接，客户端随后按 Last-Event-ID 重连
+     */
+    @EventListener(ContextClosedEvent.class)
+    public void closeAll() {
+        customerSubscribers.values().forEach(subscribers -> List.copyOf(subscribers).forEach(Subscriber::complete));
+        List.copyOf(supportSubscribers).forEach(Subscriber::complete);
+    }
+
+    private void pushUnread(Long customerId, SupportChat.SenderType readerType) {
+        Set<Subscriber> targets = readerType == SupportChat.SenderType.SUPPORT
+                ? supportSubscribers
+                : customerSubscribers.getOrDefault(customerId, Set.of());
+        if (targets.isEmpty()) {
+            return;
+        }
+        SupportDTO.UnreadUpdate update = new SupportDTO.UnreadUpdate(customerId,
+                supportInboxService.unreadCount(customerId, readerType));
+        targets.forEach(subscriber -> subscriber.send("unread", update));
+    }
+
+    private void replay(Subscriber subscriber, List<SupportChat> missed, Supplier<Long> latestId) {
+        if (missed.size() > replayLimit) {
+            // 断线太久，不逐条补发，由客户端重新拉取后从最新消息继续
+            subscriber.reset(latestId.get());
+            return;
+        }
+        for (SupportChat chat : missed) {
+            subscriber.sendMessage(chat.getId(), toEvent(chat));
+        }
+    }
+
+    private void broadcast(Long customerId, Consumer<Subscriber> action) {
+        customerSubscribers.getOrDefault(customerId, Set.of()).forEach(action);
+        supportSubscribers.forEach(action);
+    }
+
+    private boolean hasSubscribers(Long customerId) {
+        return !supportSubscribers.isEmpty() || customerSubscribers.containsKey(customerId);
+    }
+
+    private SupportDTO.MessageEvent toEvent(SupportChat chat) {
+        return new SupportDTO.MessageEvent(chat.getUserId(), chat.getSupportId(),
+                SupportInboxService.toMessage(chat, false));
+    }
+
+    private int connectionCount() {
+        return supportSubscribers.size() + customerSubscribers.values().stream().mapToInt(Set::size).sum();
+    }
+
+    private static Long parseEventId(String lastEventId) {
+        if (!StringUtils.hasText(lastEventId)) {
+            return null;
+        }
+        try {
+            return Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * 单个SSE连接：待发送事件排队，同一时刻最多一个 push 线程按顺序写出；发送失败或连接结束后从订阅表中移除
+     */
+    private class Subscriber {
+
+        private final SseEmitter emitter;
+        private final Long customerId;
+        private final Queue<SseEmitter.SseEventBuilder> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingCount = new AtomicInteger();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean open = true;
+        private Runnable closeAction = () -> { };
+
+        Subscriber(SseEmitter emitter, Long customerId) {
+            this.emitter = emitter;
+            this.customerId = customerId;
+            emitter.onCompletion(this::close);
+            emitter.onTimeout(this::close);
+            emitter.onError(e -> close());
+        }
+
+        void onClose(Runnable action) {
+            this.closeAction = action;
+        }
+
+        void ready(Long latestId) {
+            long id = latestId != null ? latestId : 0;
+            write(SseEmitter.event().id(String.valueOf(id)).name("ready").reconnectTime(reconnectMs)
+                    .data(Map.of("lastEventId", id)));
+        }
+
+        void reset(Long latestId) {
+            long id = latestId != null ? latestId : 0;
+            write(SseEmitter.event().id(String.valueOf(id)).name("reset").reconnectTime(reconnectMs)
+                    .data(Map.of("lastEventId", id)));
+        }
+
+        void sendMessage(Long messageId, SupportDTO.MessageEvent event) {
+            write(SseEmitter.event().id(String.valueOf(messageId)).name("message").data(event));
+        }
+
+        void send(String name, Object data) {
+            write(SseEmitter.event().name(name).data(data));
+        }
+
+        void heartbeat() {
+            // 仍有待发送事件时连接本身就不空闲，不再追加心跳
+            if (pendingCount.get() == 0) {
+                write(SseEmitter.event().comment("heartbeat"));
+            }
+        }
+
+        synchronized void complete() {
+            if (open) {
+                close();
+                emitter.complete();
+            }
+        }
+
+        private void write(SseEmitter.SseEventBuilder event) {
+            if (!open) {
+                return;
+            }
+            if (pendingCount.incrementAndGet() > maxPending) {
+                log.warn("客服推送连接积压过多，断开: customerId={}", customerId);
+                complete();
+                return;
+            }
+            pending.add(event);
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (!draining.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                pushExecutor.execute(this::drain);
+            } catch (TaskRejectedException e) {
+                draining.set(false);
+                log.warn("push 线程池已满，断开客服推送连接: customerId={}", customerId);
+                complete();
+            }
+        }
+
+        private void drain() {
+            SseEmitter.SseEventBuilder event;
+            while ((event = pending.poll()) != null) {
+                pendingCount.decrementAndGet();
+                send(event);
+            }
+            draining.set(false);
+            // 释放标记前后新加入的事件由这里或写入方之一负责调度
+            if (!pending.isEmpty()) {
+                scheduleDrain();
+            }
+        }
+
+        private synchronized void send(SseEmitter.SseEventBuilder event) {
+            if (!open) {
+                return;
+            }
+            try {
+                emitter.send(event);
+            } catch (IOException | IllegalStateException e) {
+                log.debug("客服推送连接已断开: customerId={}, error={}", customerId, e.getMessage());
+                close();
+            }
+        }
+
+        private void close() {
+            if (open) {
+                open = false;
+                pending.clear();
+                closeAction.run();
+            }
+        }
+    }
+}
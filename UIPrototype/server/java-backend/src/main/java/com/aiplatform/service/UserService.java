@@ -1,13 +1,11 @@
 package com.aiplatform.service;
 
 import com.aiplatform.dto.UserDTO;
-import com.aiplatform.entity.Chat;
 import com.aiplatform.entity.User;
 import com.aiplatform.exception.BusinessException;
-import com.aiplatform.repository.ChatRepository;
-import com.aiplatform.repository.MessageRepository;
 import com.aiplatform.repository.UserRepository;
 import com.aiplatform.security.JwtTokenProvider;
+import com.aiplatform.security.PrincipalCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
@@ -19,14 +17,12 @@ import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
-import java.util.List;
 import java.util.Optional;
 
 @Service
@@ -36,11 +32,11 @@ import java.util.Optional;
 public class UserService {
 
     private final UserRepository userRepository;
-    private final ChatRepository chatRepository;
-    private final MessageRepository messageRepository;
     private final PasswordEncoder passwordEncoder;
     private final JwtTokenProvider jwtTokenProvider;
     private final AuthenticationManager authenticationManager;
+    private final PrincipalCache principalCache;
+    private final AutoCleanupService autoCleanupService;
 
     /**
      * 用户注册
@@ -83,8 +79,8 @@ public class UserService {
             
             // 生成token
             log.debug("生成JWT token");
-            String token = jwtTokenProvider.generateToken(user.getEmail());
-            String refreshToken = jwtTokenProvider.generateRefreshToken(user.getEmail());
+            String token = jwtTokenProvider.generateToken(user);
+            String refreshToken = jwtTokenProvider.generateRefreshToken(user);
             
             log.debug("创建用户响应对象");
             UserDTO.UserResponse userResponse = UserDTO.UserResponse.fromEntity(user);
@@ -133,11 +129,11 @@ public class UserService {
             userRepository.save(user);
             
             // 登录成功后，触发自动清理（异步执行）
-            triggerAutoCleanupForUser(user.getId());
+            autoCleanupService.triggerAutoCleanupForUser(user.getId());
             
             // 生成token
-            String token = jwtTokenProvider.generateToken(user.getEmail());
-            String refreshToken = jwtTokenProvider.generateRefreshToken(user.getEmail());
+            String token = jwtTokenProvider.generateToken(user);
+            String refreshToken = jwtTokenProvider.generateRefreshToken(user);
             
             UserDTO.UserResponse userResponse = UserDTO.UserResponse.fromEntity(user);
             log.info("用户登录成功: {}", user.getId());
@@ -151,44 +147,6 @@ public class UserService {
         }
     }
 
-    /**
-     * 登录时触发自动清理（异步执行）
-     */
-    @Async
-    public void triggerAutoCleanupForUser(Long userId) {
-        try {
-            log.info("开始为用户 {} 执行登录自动清理", userId);
-            
-            // 计算30天前的时间
-            LocalDateTime cutoffDate = LocalDateTime.now().minusDays(30);
-            
-            // 查找需要清理的聊天（非保护且超过30天）
-            List<Chat> chatsToCleanup = chatRepository.findChatsToCleanup(userId, cutoffDate);
-            
-            if (!chatsToCleanup.isEmpty()) {
-                int deletedChats = 0;
-                for (Chat chat : chatsToCleanup) {
-                    try {
-                        // 删除聊天的所有消息
-                        messageRepository.deleteByChatId(chat.getId());
-                        // 删除聊天记录
-                        chatRepository.delete(chat);
-                        deletedChats++;
-                    } catch (Exception e) {
-                        log.warn("删除过期聊天失败 - chatId: {}, error: {}", chat.getId(), e.getMessage());
-                    }
-                }
-                
-                log.info("用户 {} 登录自动清理完成: 删除了 {} 个过期对话", userId, deletedChats);
-            } else {
-                log.info("用户 {} 没有需要清理的过期对话", userId);
-            }
-            
-        } catch (Exception e) {
-            log.error("用户 {} 登录自动清理失败: {}", userId, e.getMessage());
-        }
-    }
-
     /**
      * 获取当前用户信息
      */
@@ -222,6 +180,7 @@ public class UserService {
         }
         
         user = userRepository.save(user);
+        principalCache.evict(user.getEmail());
         log.info("用户资料更新成功: {}", user.getId());
         
         return UserDTO.UserResponse.fromEntity(user);
@@ -251,6 +210,7 @@ public class UserService {
         
         user.setPassword(passwordEncoder.encode(request.getNewPassword()));
         userRepository.save(user);
+        principalCache.evict(user.getEmail());
         
         log.info("用户密码修改成功: {}", user.getId());
     }
@@ -326,29 +286,11 @@ public class UserService {
         user.setStatus(newStatus);
         
         user = userRepository.save(user);
+        principalCache.evict(user.getEmail());
         log.info("用户状态更新成功: 用户ID={}, 新状态={}, 原因={}", userId, newStatus, request.getReason());
         log.info("=== UserService.updateUserStatus 结束 ===");
     }
 
-    /**
-     * 获取用户统计信息
-     */
-    @Transactional(readOnly = true)
-    public UserDTO.UserStatistics getUserStatistics() {
-        UserDTO.UserStatistics stats = new UserDTO.UserStatistics();
-        
-        stats.setTotalUsers(userRepository.count());
-        stats.setActiveUsers(userRepository.countByStatus(User.UserStatus.active));
-        stats.setAdminUsers(userRepository.countByRole(User.UserRole.admin));
-        stats.setCustomerServiceUsers(userRepository.countByRole(User.UserRole.support));
-        
-        LocalDateTime monthStart = LocalDateTime.now().withDayOfMonth(1).withHour(0).withMinute(0).withSecond(0);
-        stats.setNewUsersThisMonth(userRepository.countByCreatedAtAfter(monthStart));
-        stats.setLockedUsers(userRepository.countByStatus(User.UserStatus.banned));
-        
-        return stats;
-    }
-
     /**
      * 获取当前登录用户的邮箱
      */
@@ -410,6 +352,7 @@ public class UserService {
         
         // 保存用户
         user = userRepository.save(user);
+        principalCache.evict(user.getEmail());
         
         log.info("用户角色修改成功: {} -> {}", oldRole, newRole);
         
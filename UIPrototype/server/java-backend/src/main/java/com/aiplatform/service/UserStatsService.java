@@ -0,0 +1,204 @@
+package com.aiplatform.service;
+
+import com.aiplatform.entity.Chat;
+import com.aiplatform.entity.UserStats;
+import com.aiplatform.repository.UserStatsRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 用户数据统计（user_stats）
+ *
+ * 聊天/消息写入路径在同一事务内按增量更新统计行，统计接口只需按主键读取一行。
+ * 统计行在首次读取时完整计算生成；批量清理后和定时校准任务中重新计算，修正可能的偏差。
+ */
+@Service
+@Slf4j
+public class UserStatsService {
+
+    private static final String CHAT_COUNTS_SQL =
+            "SELECT COUNT(*) AS chats, " +
+            "COALESCE(SUM(CASE WHEN is_favorite = true THEN 1 ELSE 0 END), 0) AS favorites, " +
+            "COALESCE(SUM(CASE WHEN is_protected = true THEN 1 ELSE 0 END), 0) AS protected_chats " +
+            "FROM chats WHERE user_id = ?";
+
+    private static final String MESSAGE_COUNTS_SQL =
+            "SELECT COUNT(*) AS messages, COALESCE(SUM(OCTET_LENGTH(m.content)), 0) AS bytes " +
+            "FROM messages m JOIN chats c ON c.id = m.chat_id WHERE c.user_id = ?";
+
+    private static final String CHAT_MESSAGE_COUNTS_SQL =
+            "SELECT COUNT(*) AS messages, COALESCE(SUM(OCTET_LENGTH(content)), 0) AS bytes " +
+            "FROM messages WHERE chat_id = ?";
+
+    private final UserStatsRepository userStatsRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter reconciledOk;
+    private final Counter reconciledDrift;
+
+    @Value("${app.stats.reconcile-batch-size:500}")
+    private int reconcileBatchSize;
+
+    public UserStatsService(UserStatsRepository userStatsRepository,
+                            JdbcTemplate jdbcTemplate,
+                            PlatformTransactionManager transactionManager,
+                            MeterRegistry meterRegistry) {
+        this.userStatsRepository = userStatsRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.reconciledOk = Counter.builder("user.stats.reconciled").tag("result", "ok").register(meterRegistry);
+        this.reconciledDrift = Counter.builder("user.stats.reconciled").tag("result", "drift").register(meterRegistry);
+    }
+
+    /**
+     * 读取用户统计，不存在时完整计算生成
+     */
+    public UserStats getStats(Long userId) {
+        return userStatsRepository.findById(userId).orElseGet(() -> recalculate(userId));
+    }
+
+    @Transactional
+    public void onChatCreated(Long userId) {
+        applyDelta(userId, 1, 0, 0, 0, 0);
+    }
+
+    @Transactional
+    public void onMessageSaved(Long userId, String content) {
+        long bytes = content != null ? content.getBytes(StandardCharsets.UTF_8).length : 0;
+        applyDelta(userId, 0, 1, 0, 0, bytes);
+    }
+
+    /**
+     * 消息组提交按批写入后累加
+     */
+    @Transactional
+    public void onMessagesSaved(Long userId, long messages, long bytes) {
+        applyDelta(userId, 0, messages, 0, 0, bytes);
+    }
+
+    @Transactional
+    public void onFavoriteChanged(Long userId, boolean favorite) {
+        applyDelta(userId, 0, 0, favorite ? 1 : -1, 0, 0);
+    }
+
+    @Transactional
+    public void onProtectionChanged(Long userId, boolean protectedChat) {
+        applyDelta(userId, 0, 0, 0, protectedChat ? 1 : -1, 0);
+    }
+
+    /**
+     * 在删除聊天之前调用，扣减该聊天及其消息
+     */
+    @Transactional
+    public void onChatDeleting(Long userId, Chat chat) {
+        Map<String, Object> messages = jdbcTemplate.queryForMap(CHAT_MESSAGE_COUNTS_SQL, chat.getId());
+        applyDelta(userId, -1, -number(messages, "messages"),
+                Boolean.TRUE.equals(chat.getIsFavorite()) ? -1 : 0,
+                Boolean.TRUE.equals(chat.getIsProtected()) ? -1 : 0,
+                -number(messages, "bytes"));
+    }
+
+    /**
+     * 按明细表重新计算统计行（批量清理等绕过增量更新的操作之后调用）
+     */
+    public UserStats recalculate(Long userId) {
+        return reconcile(userId, false);
+    }
+
+    /**
+     * 锁定统计行后按明细表重新计算，期间的增量更新会等待提交后再累加；checkDrift 时记录与增量结果的偏差
+     */
+    private UserStats reconcile(Long userId, boolean checkDrift) {
+        return transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            jdbcTemplate.update("INSERT INTO user_stats (user_id, chat_count, message_count, favorite_count, " +
+                    "protected_count, content_bytes, updated_at) VALUES (?, 0, 0, 0, 0, 0, ?) " +
+                    "ON DUPLICATE KEY UPDATE user_id = user_id", userId, now);
+            UserStats stats = userStatsRepository.findForUpdate(userId).orElseThrow();
+
+            Map<String, Object> chats = jdbcTemplate.queryForMap(CHAT_COUNTS_SQL, userId);
+            Map<String, Object> messages = jdbcTemplate.queryForMap(MESSAGE_COUNTS_SQL, userId);
+            long chatCount = number(chats, "chats");
+            long favoriteCount = number(chats, "favorites");
+            long protectedCount = number(chats, "protected_chats");
+            long messageCount = number(messages, "messages");
+            long contentBytes = number(messages, "bytes");
+
+            if (checkDrift && stats.getReconciledAt() != null) {
+                boolean drifted = !Objects.equals(stats.getChatCount(), chatCount)
+                        || !Objects.equals(stats.getMessageCount(), messageCount)
+                        || !Objects.equals(stats.getFavoriteCount(), favoriteCount)
+                        || !Objects.equals(stats.getProtectedCount(), protectedCount)
+                        || !Objects.equals(stats.getContentBytes(), contentBytes);
+                if (drifted) {
+                    reconciledDrift.increment();
+                    log.warn("用户统计存在偏差，已校准: userId={}, chats {}->{}, messages {}->{}, bytes {}->{}",
+                            userId, stats.getChatCount(), chatCount, stats.getMessageCount(), messageCount,
+                            stats.getContentBytes(), contentBytes);
+                } else {
+                    reconciledOk.increment();
+                }
+            }
+
+            stats.setChatCount(chatCount);
+            stats.setMessageCount(messageCount);
+            stats.setFavoriteCount(favoriteCount);
+            stats.setProtectedCount(protectedCount);
+            stats.setContentBytes(contentBytes);
+            stats.setUpdatedAt(now);
+            stats.setReconciledAt(now);
+            return userStatsRepository.save(stats);
+        });
+    }
+
+    /**
+     * 定时校准全部统计行
+     */
+    @Scheduled(cron = "${app.stats.reconcile-cron:0 15 4 * * *}")
+    public void reconcileAll() {
+        long startedAt = System.currentTimeMillis();
+        long afterUserId = 0;
+        int reconciled = 0;
+        while (true) {
+            List<Long> userIds = userStatsRepository.findUserIdsAfter(afterUserId, PageRequest.of(0, reconcileBatchSize));
+            if (userIds.isEmpty()) {
+                break;
+            }
+            for (Long userId : userIds) {
+                try {
+                    reconcile(userId, true);
+                    reconciled++;
+                } catch (Exception e) {
+                    log.error("用户 {} 统计校准失败: {}", userId, e.getMessage());
+                }
+            }
+            afterUserId = userIds.get(userIds.size() - 1);
+        }
+        log.info("用户统计校准完成: users={}, elapsedMs={}", reconciled, System.currentTimeMillis() - startedAt);
+    }
+
+    private void applyDelta(Long userId, long chats, long messages, long favorites, long protectedChats, long bytes) {
+        // 统计行尚不存在时忽略，首次读取时会完整计算
+        userStatsRepository.applyDelta(userId, chats, messages, favorites, protectedChats, bytes, LocalDateTime.now());
+    }
+
+    private static long number(Map<String, Object> row, String column) {
+        Object value = row.get(column);
+        return value instanceof Number number ? number.longValue() : 0;
+    }
+}
@@ -0,0 +1,209 @@
+package com.aiplatform.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * 有界的 LRU + TTL 本地缓存
+ *
+ * 条目存放在 ConcurrentHashMap 中，读取不加全局锁，只记录最近访问时间；超过容量时由一个线程按最近访问时间
+ * 批量淘汰最久未访问的条目（近似 LRU），过期条目在访问时移除。命中、未命中和淘汰次数上报为
+ * cache.gets / cache.evictions 指标（按 cache 名称打标签），与 Micrometer 自带缓存指标命名一致。
+ */
+public class TtlCache<K, V> {
+
+    private final long ttlNanos;
+    private final int maxSize;
+    private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    // 每个键正在进行的加载；失效或写入该键时移除令牌，令牌不在时丢弃加载结果，避免把旧值写回缓存
+    private final ConcurrentHashMap<K, Object> loads = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public TtlCache(String name, int maxSize, Duration ttl, MeterRegistry meterRegistry) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.hits = Counter.builder("cache.gets").tag("cache", name).tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("cache.gets").tag("cache", name).tag("result", "miss").register(meterRegistry);
+        this.evictions = Counter.builder("cache.evictions").tag("cache", name).register(meterRegistry);
+        Gauge.builder("cache.size", this, TtlCache::size).tag("cache", name).register(meterRegistry);
+    }
+
+    /**
+     * 读取未过期的值，不存在时返回 null
+     */
+    public V get(K key) {
+        Entry<V> entry = live(key);
+        if (entry != null) {
+            entry.lastAccess = System.nanoTime();
+            hits.increment();
+            return entry.value;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 读取未过期的值，不计入命中统计、不刷新访问时间
+     */
+    public V peek(K key) {
+        Entry<V> entry = live(key);
+        return entry != null ? entry.value : null;
+    }
+
+    /**
+     * 读取值，未命中时调用 loader 加载并写入缓存；loader 返回 null 时不缓存，
+     * 加载期间该键被失效或写入时只返回加载结果、不写入缓存
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V cached = get(key);
+        if (cached != null) {
+            return cached;
+        }
+        Object token = new Object();
+        loads.put(key, token);
+        V value;
+        try {
+            value = loader.apply(key);
+        } catch (RuntimeException | Error e) {
+            loads.remove(key, token);
+            throw e;
+        }
+        // 与 invalidate 对同一个键串行：令牌仍在时写入并移除令牌，否则丢弃
+        loads.computeIfPresent(key, (k, current) -> {
+            if (current != token) {
+                return current;
+            }
+            if (value != null) {
+                store(key, value);
+            }
+            return null;
+        });
+        evictIfNeeded();
+        return value;
+    }
+
+    /**
+     * 该键是否有正在进行的加载
+     */
+    public boolean isLoading(K key) {
+        return loads.containsKey(key);
+    }
+
+    /**
+     * 不存在未过期的值时写入并返回 null，否则返回已有值且不覆盖
+     */
+    public V putIfAbsent(K key, V value) {
+        Object[] existing = new Object[1];
+        entries.compute(key, (k, entry) -> {
+            if (entry != null && entry.isLive(System.nanoTime())) {
+                entry.lastAccess = System.nanoTime();
+                existing[0] = entry.value;
+                return entry;
+            }
+            return newEntry(value);
+        });
+        @SuppressWarnings("unchecked")
+        V previous = (V) existing[0];
+        if (previous != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            evictIfNeeded();
+        }
+        return previous;
+    }
+
+    public void put(K key, V value) {
+        loads.remove(key);
+        store(key, value);
+        evictIfNeeded();
+    }
+
+    public V invalidate(K key) {
+        // 先移除加载令牌：之后完成的加载不再写入，之前已写入的值随后被移除
+        loads.remove(key);
+        Entry<V> entry = entries.remove(key);
+        return entry != null ? entry.value : null;
+    }
+
+    public void invalidateAll() {
+        loads.clear();
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private Entry<V> live(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isLive(System.nanoTime())) {
+            return entry;
+        }
+        entries.remove(key, entry);
+        return null;
+    }
+
+    private void store(K key, V value) {
+        entries.put(key, newEntry(value));
+    }
+
+    private Entry<V> newEntry(V value) {
+        long now = System.nanoTime();
+        return new Entry<>(value, now + ttlNanos, now);
+    }
+
+    private void evictIfNeeded() {
+        if (entries.size() <= maxSize || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            // 一次多淘汰约 1/16 容量，摊薄排序的开销
+            int excess = entries.size() - maxSize;
+            if (excess <= 0) {
+                return;
+            }
+            entries.entrySet().stream()
+                    .sorted(Comparator.comparingLong((Map.Entry<K, Entry<V>> e) -> e.getValue().lastAccess))
+                    .limit(excess + maxSize / 16)
+                    .toList()
+                    .forEach(e -> {
+                        if (entries.remove(e.getKey(), e.getValue())) {
+                            evictions.increment();
+                        }
+                    });
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+        private volatile long lastAccess;
+
+        private Entry(V value, long expiresAt, long lastAccess) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.lastAccess = lastAccess;
+        }
+
+        private boolean isLive(long now) {
+            return expiresAt - now > 0;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.aiplatform.entity;
+
+import com.aiplatform.AiChatBackendApplication;
+import com.aiplatform.repository.UserRepository;
+import com.aiplatform.service.ChatService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个事务插入 100 行的吞吐（inserts/sec），按 JDBC 批大小 1/20/100 对比：
+ * pooled 为号段主键的 messages，identity 为自增主键的 support_chats（Hibernate 逐条插入以取回ID，批大小不起作用）
+ *
+ * 使用 test profile 的内存 H2，没有网络往返，批量带来的收益会明显小于 MySQL。不参与 mvn test，运行方式：
+ * mvn -B test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ *     "-Dexec.args=-cp %classpath com.aiplatform.entity.PooledIdInsertBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(PooledIdInsertBenchmark.ROWS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PooledIdInsertBenchmark {
+
+    static final int ROWS = 100;
+
+    @Param({"1", "20", "100"})
+    private int batchSize;
+
+    @Param({"pooled", "identity"})
+    private String ids;
+
+    private ConfigurableApplicationContext context;
+    private EntityManagerFactory entityManagerFactory;
+    private Long userId;
+    private Long chatId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(AiChatBackendApplication.class)
+                .profiles("test")
+                .properties("server.port=0",
+                        "spring.jpa.properties.hibernate.jdbc.batch_size=" + batchSize,
+                        "logging.level.root=ERROR")
+                .run();
+        entityManagerFactory = context.getBean(EntityManagerFactory.class);
+
+        User user = new User();
+        user.setUsername("bench");
+        user.setEmail("bench@example.com");
+        user.setPassword("secret");
+        userId = context.getBean(UserRepository.class).save(user).getId();
+        chatId = context.getBean(ChatService.class).createChat(userId, "bench", Chat.AiType.text_to_text).getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void insertRows() {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            for (int i = 0; i < ROWS; i++) {
+                entityManager.persist("pooled".equals(ids) ? message(i) : supportChat(i));
+            }
+            entityManager.getTransaction().commit();
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private Message message(int i) {
+        Message message = new Message();
+        message.setChatId(chatId);
+        message.setRole(Message.MessageRole.user);
+        message.setContent("benchmark message " + i);
+        return message;
+    }
+
+    private SupportChat supportChat(int i) {
+        SupportChat supportChat = new SupportChat();
+        supportChat.setUserId(userId);
+        supportChat.setSenderType(SupportChat.SenderType.USER);
+        supportChat.setContent("benchmark message " + i);
+        supportChat.setIsRead(false);
+        return supportChat;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PooledIdInsertBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,118 @@
+package com.aiplatform.service;
+
+import com.aiplatform.entity.Chat;
+import com.aiplatform.entity.Message;
+import com.aiplatform.repository.ChatRepository;
+import com.aiplatform.repository.MessageRepository;
+import com.aiplatform.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 并发发送消息时消息计数不丢失更新，保存回复失败时计数与消息行数仍然一致
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class ChatMessageCountConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int TURNS_PER_THREAD = 25;
+
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ChatRepository chatRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Test
+    void concurrentSendsKeepMessageCount() throws Exception {
+        Long userId = TestUsers.create(userRepository);
+        Long chatId = chatService.createChat(userId, "并发计数", Chat.AiType.text_to_text).getId();
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < TURNS_PER_THREAD; i++) {
+                        // 单条消息 +1，一轮对话（提示词 + 回复）+2
+                        chatService.sendMessage(chatId, userId, "消息" + i, Message.MessageRole.user);
+                        chatService.persistPrompt(chatId, userId, "问题" + i);
+                        chatService.persistReply(chatId, userId, "回答" + i);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertMessageCount(chatId, THREADS * TURNS_PER_THREAD * 3);
+    }
+
+    @Test
+    void failedReplyKeepsPromptCounted() throws Exception {
+        Long userId = TestUsers.create(userRepository);
+        Long chatId = chatService.createChat(userId, "回复失败", Chat.AiType.text_to_text).getId();
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < TURNS_PER_THREAD; i++) {
+                        chatService.persistPrompt(chatId, userId, "问题" + i);
+                        if (i % 2 == 0) {
+                            chatService.persistReply(chatId, userId, "回答" + i);
+                        } else {
+                            // 回复写入失败（content 不能为空），整个回复事务回滚，已保存的提示词仍然计数
+                            assertThrows(RuntimeException.class, () -> chatService.persistReply(chatId, userId, null));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        int replies = (TURNS_PER_THREAD + 1) / 2;
+        assertMessageCount(chatId, THREADS * (TURNS_PER_THREAD + replies));
+    }
+
+    private void assertMessageCount(Long chatId, int expected) {
+        Chat chat = chatRepository.findById(chatId).orElseThrow();
+        assertEquals(expected, chat.getMessageCount());
+        assertEquals(expected, messageRepository.countByChatId(chatId));
+    }
+}
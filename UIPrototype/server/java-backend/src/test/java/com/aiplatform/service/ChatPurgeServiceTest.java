@@ -0,0 +1,105 @@
+package com.aiplatform.service;
+
+import com.aiplatform.dto.ChatDTO;
+import com.aiplatform.entity.Chat;
+import com.aiplatform.entity.Message;
+import com.aiplatform.exception.BusinessException;
+import com.aiplatform.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 批量清理 10 万条消息：只删除过期的非保护聊天及其消息，保护聊天和近期聊天保持不变；
+ * 已标记 purging 的聊天拒绝新消息和保护操作，并在下一次清理时删除
+ *
+ * 每条语句最多删除 300 条消息，每个聊天的消息需要分多轮删除
+ */
+@SpringBootTest(properties = "app.data.purge.message-batch-size=300")
+@ActiveProfiles("test")
+class ChatPurgeServiceTest {
+
+    private static final int EXPIRED_CHATS = 80;
+    private static final int PROTECTED_CHATS = 20;
+    private static final int RECENT_CHATS = 25;
+    private static final int MESSAGES_PER_CHAT = 800;
+    /** 直接插入的消息使用远离号段分配范围的ID */
+    private static final long FIRST_MESSAGE_ID = 50_000_000L;
+
+    @Autowired
+    private ChatPurgeService chatPurgeService;
+
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void purgingChatRejectsWritesAndIsDeletedByNextPurge() {
+        Long userId = TestUsers.create(userRepository);
+        Long chatId = chatService.createChat(userId, "清理中", Chat.AiType.text_to_text).getId();
+        chatService.sendMessage(chatId, userId, "消息", Message.MessageRole.user);
+        // 模拟上一次清理在标记之后中途失败
+        jdbcTemplate.update("UPDATE chats SET purging = true WHERE id = ?", chatId);
+
+        assertThrows(BusinessException.class, () -> chatService.persistPrompt(chatId, userId, "问题"));
+        assertThrows(BusinessException.class, () -> chatService.toggleProtection(chatId, userId));
+
+        ChatDTO.PurgeResult result = chatPurgeService.purgeExpired(userId, LocalDateTime.now().minusDays(30));
+        assertEquals(1, result.getDeletedChats());
+        assertEquals(1, result.getDeletedMessages());
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM chats WHERE id = ?", Integer.class, chatId));
+    }
+
+    @Test
+    void purgeExpiredDeletesOnlyMatchingChats() {
+        Long userId = TestUsers.create(userRepository);
+
+        LocalDateTime old = LocalDateTime.now().minusDays(100);
+        List<Long> chatIds = new ArrayList<>();
+        for (int i = 0; i < EXPIRED_CHATS + PROTECTED_CHATS + RECENT_CHATS; i++) {
+            Long chatId = chatService.createChat(userId, "清理" + i, Chat.AiType.text_to_text).getId();
+            chatIds.add(chatId);
+            if (i < EXPIRED_CHATS + PROTECTED_CHATS) {
+                jdbcTemplate.update("UPDATE chats SET last_activity = ?, is_protected = ? WHERE id = ?",
+                        Timestamp.valueOf(old), i >= EXPIRED_CHATS, chatId);
+            }
+        }
+
+        long nextId = FIRST_MESSAGE_ID;
+        Timestamp createdAt = Timestamp.valueOf(old);
+        for (Long chatId : chatIds) {
+            List<Object[]> rows = new ArrayList<>(MESSAGES_PER_CHAT);
+            for (int i = 0; i < MESSAGES_PER_CHAT; i++) {
+                rows.add(new Object[]{nextId++, chatId, "user", "消息" + i, createdAt});
+            }
+            jdbcTemplate.batchUpdate("INSERT INTO messages (id, chat_id, role, content, created_at) VALUES (?, ?, ?, ?, ?)", rows);
+        }
+
+        ChatDTO.PurgeResult result = chatPurgeService.purgeExpired(userId, LocalDateTime.now().minusDays(30));
+
+        assertEquals(EXPIRED_CHATS, result.getDeletedChats());
+        assertEquals((long) EXPIRED_CHATS * MESSAGES_PER_CHAT, result.getDeletedMessages());
+        assertEquals(PROTECTED_CHATS + RECENT_CHATS,
+                jdbcTemplate.queryForObject("SELECT COUNT(*) FROM chats WHERE user_id = ?", Integer.class, userId));
+        // 被删聊天没有残留消息，其余聊天的消息完整
+        assertEquals((PROTECTED_CHATS + RECENT_CHATS) * MESSAGES_PER_CHAT, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM messages WHERE id >= ?", Integer.class, FIRST_MESSAGE_ID));
+        assertEquals((PROTECTED_CHATS + RECENT_CHATS) * MESSAGES_PER_CHAT, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM messages m JOIN chats c ON c.id = m.chat_id WHERE c.user_id = ?", Integer.class, userId));
+    }
+}
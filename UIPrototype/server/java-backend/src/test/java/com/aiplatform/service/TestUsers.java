@@ -0,0 +1,24 @@
+package com.aiplatform.service;
+
+import com.aiplatform.entity.User;
+import com.aiplatform.repository.UserRepository;
+
+import java.util.UUID;
+
+/**
+ * 测试数据：随机用户名和邮箱的普通用户
+ */
+final class TestUsers {
+
+    private TestUsers() {
+    }
+
+    static Long create(UserRepository userRepository) {
+        User user = new User();
+        String name = "u" + UUID.randomUUID().toString().substring(0, 8);
+        user.setUsername(name);
+        user.setEmail(name + "@example.com");
+        user.setPassword("secret");
+        return userRepository.save(user).getId();
+    }
+}
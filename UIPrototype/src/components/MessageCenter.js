@@ -1,4 +1,4 @@
-import React, { useState, useEffect } from 'react';
+import React, { useState, useEffect, useRef } from 'react';
 import { useNavigate } from 'react-router-dom';
 import { 
   MessageSquare, 
@@ -100,6 +100,81 @@ const MessageCenter = ({ user, onLogout }) => {
     }
   }, [selectedSupport, user]);
 
+  // 推送事件处理函数中读取最新的选中客服和客户列表
+  const selectedSupportRef = useRef(null);
+  const customerChatsRef = useRef([]);
+  useEffect(() => { selectedSupportRef.current = selectedSupport; }, [selectedSupport]);
+  useEffect(() => { customerChatsRef.current = customerChats; }, [customerChats]);
+
+  // 订阅客服对话推送，新消息和未读数量实时更新，不再轮询
+  useEffect(() => {
+    if (!user) return undefined;
+
+    if (user.role === 'support') {
+      return adminAPI.streamCustomerChats((event, data) => {
+        if (event === 'reset') {
+          loadCustomerChats();
+        } else if (event === 'message') {
+          const { customerId, message } = data;
+          if (!customerChatsRef.current.some(chat => chat.id === customerId)) {
+            // 新客户出现在列表中，重新拉取第一页
+            loadCustomerChats();
+            return;
+          }
+          setCustomerChats(prev => {
+            const current = prev.find(chat => chat.id === customerId);
+            const updated = { ...current, lastMessage: message.content, updatedAt: message.createdAt };
+            return [updated, ...prev.filter(chat => chat.id !== customerId)];
+          });
+          setSelectedCustomer(prev => (prev?.id === customerId
+            ? { ...prev, messages: mergePushedMessage(prev.messages, message) }
+            : prev));
+        } else if (event === 'unread') {
+          setCustomerChats(prev => prev.map(chat => (chat.id === data.customerId
+            ? { ...chat, unreadCount: data.unreadCount }
+            : chat)));
+        }
+      });
+    }
+
+    if (user.role === 'user' || user.role === 'admin') {
+      return userAPI.streamSupportChat((event, data) => {
+        if (event === 'reset') {
+          loadSupportChat();
+        } else if (event === 'message') {
+          const { supportId, message } = data;
+          const current = selectedSupportRef.current;
+          if (!current) return;
+          const matches = String(supportId) === String(current.id)
+            || (message.senderType === 'USER' && supportId == null);
+          if (!matches) return;
+          setSupportChat(prev => mergePushedMessage(prev, {
+            ...message,
+            userId: data.customerId,
+            supportId,
+            fromUserId: message.senderType === 'USER' ? data.customerId : supportId
+          }));
+        }
+      });
+    }
+    return undefined;
+  }, [user]);
+
+  // 合并推送来的消息：按ID去重，并替换本地发送时临时添加的同内容消息
+  const mergePushedMessage = (messages = [], message) => {
+    if (messages.some(msg => msg.id === message.id)) {
+      return messages;
+    }
+    const pendingIndex = messages.findIndex(msg => msg.pending
+      && msg.content === message.content && msg.senderType === message.senderType);
+    if (pendingIndex !== -1) {
+      const next = [...messages];
+      next[pendingIndex] = message;
+      return next;
+    }
+    return [...messages, message];
+  };
+
   // 加载接收到的消息
   const loadMessages = async () => {
     try {
@@ -183,6 +258,12 @@ const MessageCenter = ({ user, onLogout }) => {
       
       let allChats = Array.isArray(response) ? response : [];
       
+      // 打开对话即读到最新一条
+      if (allChats.length > 0) {
+        userAPI.markSupportChatRead(allChats[allChats.length - 1].id)
+          .catch(error => console.error('标记客服对话已读失败:', error));
+      }
+      
       // 如果选择了特定客服，只显示与该客服的对话
       if (selectedSupport) {
         console.log('过滤对话，选中的客服:', selectedSupport);
@@ -248,9 +329,9 @@ const MessageCenter = ({ user, onLogout }) => {
       const response = await adminAPI.getCustomerChats();
       console.log('loadCustomerChats - 原始响应:', response);
       console.log('响应类型:', typeof response);
-      console.log('响应是否为数组:', Array.isArray(response));
       
-      const customerChatsList = Array.isArray(response) ? response : [];
+      // 列表只包含最后一条消息和未读数量，对话内容在打开客户时单独加载
+      const customerChatsList = Array.isArray(response?.customers) ? response.customers : [];
       setCustomerChats(customerChatsList);
       
       console.log('设置的客户对话列表:', customerChatsList);
@@ -276,6 +357,20 @@ const MessageCenter = ({ user, onLogout }) => {
     }
   };
 
+  // 客服打开某个客户的对话，加载最新一页消息
+  const openCustomerChat = async (chat) => {
+    setSelectedCustomer({ ...chat, messages: [] });
+    try {
+      const transcript = await adminAPI.getCustomerMessages(chat.id, { size: 100 });
+      setSelectedCustomer(prev => (prev?.id === chat.id
+        ? { ...prev, messages: transcript?.messages || [] }
+        : prev));
+    } catch (error) {
+      console.error('加载客户对话内容失败:', error);
+      showNotification('加载对话内容失败: ' + error.message, 'error');
+    }
+  };
+
   // 发送消息给客服
   const sendToSupport = async () => {
     if (!newMessage.trim() || !selectedSupport) {
@@ -303,7 +398,8 @@ const MessageCenter = ({ user, onLogout }) => {
         senderType: 'USER',
         fromUserId: user.id,
         fromUser: user,
-        isRead: true
+        isRead: true,
+        pending: true
       };
 
       setSupportChat(prev => [...prev, newChatMessage]);
@@ -312,9 +408,6 @@ const MessageCenter = ({ user, onLogout }) => {
       // 显示成功通知
       showNotification(`消息已发送给 ${selectedSupport.username}`);
       
-      // 重新加载对话以获取最新状态
-      setTimeout(loadSupportChat, 500);
-      
     } catch (error) {
       console.error('发送消息失败:', error);
       showNotification('发送消息失败: ' + error.message, 'error');
@@ -341,7 +434,8 @@ const MessageCenter = ({ user, onLogout }) => {
         content: newMessage,
         createdAt: new Date().toISOString(),
         isFromCustomer: false,  // 客服发送的消息
-        senderType: 'SUPPORT'
+        senderType: 'SUPPORT',
+        pending: true
       };
 
       // 更新当前选中客户的消息列表
@@ -353,9 +447,6 @@ const MessageCenter = ({ user, onLogout }) => {
       setNewMessage('');
       showNotification('消息发送成功', 'success');
       
-      // 刷新客户对话列表（更新最后消息时间等）
-      await loadCustomerChats();
-      
     } catch (error) {
       console.error('回复客户失败:', error);
       showNotification('回复失败: ' + error.message, 'error');
@@ -981,7 +1072,7 @@ const MessageCenter = ({ user, onLogout }) => {
                         key={chat.id}
                         className={`customer-item ${selectedCustomer?.id === chat.id ? 'selected' : ''}`}
                         onClick={() => {
-                          setSelectedCustomer(chat);
+                          openCustomerChat(chat);
                           // 在手机端选择客户后隐藏客户列表
                           if (isMobile) {
                             setShowCustomerList(false);
@@ -139,8 +139,9 @@ export const chatAPI = {
   // 创建新对话
   create: (chatData) => api.post('/chat/create', chatData),
   
-  // 发送消息
-  sendMessage: (chatId, messageData) => api.post(`/chat/${chatId}/message`, messageData),
+  // 发送消息；重试同一条消息时传入相同的 idempotencyKey，服务端返回原响应而不会重复生成
+  sendMessage: (chatId, messageData, idempotencyKey) => api.post(`/chat/${chatId}/message`, messageData,
+    idempotencyKey ? { headers: { 'Idempotency-Key': idempotencyKey } } : undefined),
   
   // 获取对话消息
   getMessages: (chatId, params = {}) => api.get(`/chat/${chatId}/messages`, { params }),
@@ -156,6 +157,9 @@ export const chatAPI = {
   
   // 切换保护状态
   toggleProtection: (chatId) => api.patch(`/chat/${chatId}/protect`),
+  
+  // 设置是否允许复用缓存回复
+  setResponseCache: (chatId, enabled) => api.patch(`/chat/${chatId}/response-cache`, { enabled }),
 };
 
 // 历史记录相关API
@@ -221,6 +225,8 @@ export const userAPI = {
   
   // 客服对话
   getSupportChat: () => api.get('/user/support/chat'),
+  markSupportChatRead: (messageId) => api.post('/user/support/chat/read', { messageId }),
+  streamSupportChat: (onEvent) => openEventStream('/user/support/stream', onEvent),
   sendToSupport: (messageData) => api.post('/user/support/message', messageData),
   
   // 获取客服人员列表
@@ -250,12 +256,17 @@ export const adminAPI = {
   // 获取系统统计
   getStatistics: () => api.get('/admin/statistics'),
   
+  // 重新生成系统统计
+  refreshStatistics: () => api.post('/admin/statistics/refresh'),
+  
   // 获取系统日志
   getLogs: (params = {}) => api.get('/admin/logs', { params }),
   
   // 客服工作台相关
-  getCustomerChats: () => api.get('/admin/support/customer-chats'),
+  getCustomerChats: (params = {}) => api.get('/admin/support/customer-chats', { params }),
+  getCustomerMessages: (customerId, params = {}) => api.get(`/admin/support/customer-chats/${customerId}/messages`, { params }),
   replyToCustomer: (replyData) => api.post('/admin/support/reply', replyData),
+  streamCustomerChats: (onEvent) => openEventStream('/admin/support/stream', onEvent),
 };
 
 // 工具函数
@@ -305,5 +316,76 @@ export const apiUtils = {
   },
 };
 
+// 订阅SSE推送：EventSource 无法携带 Authorization 头，这里用 fetch 读取事件流，
+// 断开后按服务端给出的 retry 间隔重连，并通过 Last-Event-ID 续传。返回关闭函数
+export const openEventStream = (path, onEvent) => {
+  let closed = false;
+  let controller = null;
+  let lastEventId = null;
+  let retryMs = 3000;
+
+  const dispatch = (block) => {
+    let event = 'message';
+    let id = null;
+    const data = [];
+    block.split('\n').forEach((line) => {
+      if (!line || line.startsWith(':')) return;
+      const index = line.indexOf(':');
+      const field = index === -1 ? line : line.slice(0, index);
+      const value = index === -1 ? '' : line.slice(index + 1).replace(/^ /, '');
+      if (field === 'event') event = value;
+      else if (field === 'data') data.push(value);
+      else if (field === 'id') id = value;
+      else if (field === 'retry' && /^\d+$/.test(value)) retryMs = Number(value);
+    });
+    if (id !== null) lastEventId = id;
+    if (data.length === 0) return;
+    try {
+      onEvent(event, JSON.parse(data.join('\n')));
+    } catch (error) {
+      console.error('解析推送事件失败:', error);
+    }
+  };
+
+  const connect = async () => {
+    controller = new AbortController();
+    const headers = { Accept: 'text/event-stream' };
+    const token = localStorage.getItem('authToken');
+    if (token) headers.Authorization = `Bearer ${token}`;
+    if (lastEventId !== null) headers['Last-Event-ID'] = lastEventId;
+    try {
+      const response = await fetch(api.defaults.baseURL + path, { headers, signal: controller.signal });
+      if (!response.ok || !response.body) {
+        throw new Error(`HTTP ${response.status}`);
+      }
+      const reader = response.body.getReader();
+      const decoder = new TextDecoder();
+      let buffer = '';
+      for (;;) {
+        const { done, value } = await reader.read();
+        if (done) break;
+        buffer += decoder.decode(value, { stream: true }).replace(/\r\n?/g, '\n');
+        let boundary;
+        while ((boundary = buffer.indexOf('\n\n')) !== -1) {
+          dispatch(buffer.slice(0, boundary));
+          buffer = buffer.slice(boundary + 2);
+        }
+      }
+    } catch (error) {
+      if (closed) return;
+      console.warn('推送连接断开，稍后重连:', error.message);
+    }
+    if (!closed) {
+      setTimeout(connect, retryMs);
+    }
+  };
+
+  connect();
+  return () => {
+    closed = true;
+    if (controller) controller.abort();
+  };
+};
+
 // 导出默认api实例
 export default api; 
\ No newline at end of file